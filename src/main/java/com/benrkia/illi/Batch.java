@@ -0,0 +1,190 @@
+package com.benrkia.illi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Runs many scripts in a single JVM on a work-stealing pool. Every script gets
+ * its own interpreter, reporter and budget, and its output is captured instead
+ * of being interleaved with the other scripts: the report lists it under the
+ * file, each line after a {@code |}, followed by the errors of scripts that
+ * failed. A script that fails the interpreter itself, e.g. with a stack
+ * overflow, is reported as a runtime error of that script only.
+ */
+class Batch {
+  static class Result {
+    final Path file;
+    final int status;
+    final long nanos;
+    final String out;
+    final String err;
+
+    Result (Path file, int status, long nanos, String out, String err) {
+      this.file = file;
+      this.status = status;
+      this.nanos = nanos;
+      this.out = out;
+      this.err = err;
+    }
+  }
+
+  private static final String SCRIPT_EXTENSION = ".ily";
+
+  private final Environment base;
+  private final Budget.Limits limits;
+
+  Batch () {
+    this(null, new Budget.Limits());
+  }
+
+  /**
+   * @param base the globals every script starts with, forked for each of them
+   * @param limits the budget of every script
+   */
+  Batch (Environment base, Budget.Limits limits) {
+    this.base = base;
+    this.limits = limits;
+  }
+
+  /**
+   * Runs every script matched by {@code patterns} and writes the report to {@code report}
+   *
+   * @return the highest exit status of the scripts
+   */
+  int run (List<String> patterns, PrintStream report) throws IOException {
+    var files = collect(patterns);
+
+    var pool = Executors.newWorkStealingPool();
+    var start = System.nanoTime();
+    List<Result> results;
+    try {
+      results = run(files, pool);
+    } finally {
+      pool.shutdown();
+    }
+
+    report(results, System.nanoTime() - start, report);
+    return results.stream().mapToInt(result -> result.status).max().orElse(0);
+  }
+
+  /**
+   * Expands files, directories (every {@code .ily} file below them) and globs
+   * such as {@code scripts/**&#47;*.ily} into a list of scripts
+   */
+  List<Path> collect (List<String> patterns) throws IOException {
+    var files = new LinkedHashSet<Path>();
+    for (var pattern: patterns) {
+      if (isGlob(pattern)) {
+        var matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (var walk = Files.walk(globBase(pattern))) {
+          walk.filter(Files::isRegularFile).filter(matcher::matches).sorted().forEach(files::add);
+        }
+      } else if (Files.isDirectory(Paths.get(pattern))) {
+        try (var walk = Files.walk(Paths.get(pattern))) {
+          walk.filter(Files::isRegularFile)
+                  .filter(path -> path.toString().endsWith(SCRIPT_EXTENSION))
+                  .sorted()
+                  .forEach(files::add);
+        }
+      } else {
+        files.add(Paths.get(pattern));
+      }
+    }
+    return new ArrayList<>(files);
+  }
+
+  List<Result> run (List<Path> files, ExecutorService pool) {
+    var futures = files.stream()
+            .map(file -> pool.submit(() -> run(file)))
+            .collect(Collectors.toList());
+
+    var results = new ArrayList<Result>(files.size());
+    for (var i = 0; i < futures.size(); ++i) {
+      try {
+        results.add(futures.get(i).get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while running scripts", e);
+      } catch (ExecutionException e) {
+        results.add(new Result(files.get(i), 70, 0, "", "Internal error: " + e.getCause() + "\n"));
+      }
+    }
+    return results;
+  }
+
+  Result run (Path file) {
+    var start = System.nanoTime();
+    if (!Files.isReadable(file)) {
+      return new Result(file, 66, System.nanoTime() - start, "", "File not found: " + file + "\n");
+    }
+
+    String source;
+    try {
+      source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    var out = new ByteArrayOutputStream();
+    var err = new ByteArrayOutputStream();
+    var reporter = new Reporter(new PrintStream(err, true, StandardCharsets.UTF_8));
+    var globals = base == null ? new Environment() : base.fork();
+    var interpreter = new InterpreterImpl(new PrintStream(out, true, StandardCharsets.UTF_8), reporter, globals);
+    if (!limits.isUnlimited()) interpreter.instrument(new Budget(limits));
+    Illi.run(source, reporter, interpreter, base != null);
+
+    return new Result(file, reporter.status(), System.nanoTime() - start,
+            out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8));
+  }
+
+  void report (List<Result> results, long nanos, PrintStream report) {
+    report.printf("%-6s %10s  %s%n", "STATUS", "TIME(ms)", "FILE");
+    int ok = 0, syntax = 0, runtime = 0, missing = 0;
+    for (var result: results) {
+      report.printf("%-6s %10.3f  %s%n",
+              result.status == 0 ? "ok" : String.valueOf(result.status), result.nanos / 1e6, result.file);
+      result.out.lines().forEach(line -> report.println("       | " + line));
+      if (result.status != 0) {
+        result.err.lines().forEach(line -> report.println("         " + line));
+      }
+
+      switch (result.status) {
+        case 0: ++ok; break;
+        case 65: ++syntax; break;
+        case 70: ++runtime; break;
+        case 66: ++missing; break;
+      }
+    }
+    report.printf("%d scripts: %d ok, %d syntax errors (65), %d runtime errors (70), %d not found (66) in %.3f ms%n",
+            results.size(), ok, syntax, runtime, missing, nanos / 1e6);
+  }
+
+  private static boolean isGlob (String pattern) {
+    return pattern.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+  }
+
+  /**
+   * @return the longest leading directory of {@code pattern} without glob characters
+   */
+  private static Path globBase (String pattern) {
+    var glob = 0;
+    while (!isGlob(pattern.substring(glob, glob + 1))) ++glob;
+    var separator = pattern.lastIndexOf('/', glob);
+    if (separator < 0) return Paths.get("");
+    return Paths.get(separator == 0 ? "/" : pattern.substring(0, separator));
+  }
+}
@@ -0,0 +1,119 @@
+package com.benrkia.illi;
+
+/**
+ * Limits the resources a session may use: executed statements, running time,
+ * bytes of the strings it builds and environments it allocates. The counters
+ * are polled at every statement, the clock every {@link #CLOCK_INTERVAL}
+ * statements. Install it with {@link InterpreterImpl#instrument(Instrument)};
+ * sessions without a budget don't pay for it.
+ * <p>
+ * When run by a {@link Scheduler}, the budget is also where the session gives
+ * its carrier back to the other sessions and writes out its output every
+ * {@link Scheduler#slice} statements.
+ */
+class Budget extends Instrument {
+  static class Limits {
+    long steps = Long.MAX_VALUE;
+    long millis = Long.MAX_VALUE;
+    long bytes = Long.MAX_VALUE;
+    long environments = Long.MAX_VALUE;
+
+    boolean isUnlimited () {
+      return steps == Long.MAX_VALUE && millis == Long.MAX_VALUE
+              && bytes == Long.MAX_VALUE && environments == Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * The runtime error raised when a session goes over one of its limits
+   */
+  static class Exceeded extends RuntimeError {
+    private static final long serialVersionUID = 1L;
+
+    Exceeded (Token token, String message) {
+      super(token, message);
+    }
+  }
+
+  private static final int CLOCK_INTERVAL = 64;
+
+  private final Limits limits;
+  private final long maxNanos;
+  private Scheduler scheduler;
+  private Scheduler.Output output;
+
+  private long steps = 0;
+  private long bytes = 0;
+  private long environments = 0;
+  private long nanos = 0;
+  private long resumed = System.nanoTime();
+  /** line of the statement being executed, for the nodes without a token */
+  private int line = 0;
+
+  Budget (Limits limits) {
+    this.limits = limits;
+    this.maxNanos = limits.millis == Long.MAX_VALUE ? Long.MAX_VALUE : limits.millis * 1_000_000;
+  }
+
+  void scheduleWith (Scheduler scheduler, Scheduler.Output output) {
+    this.scheduler = scheduler;
+    this.output = output;
+  }
+
+  @Override
+  void execute (Stmt stmt) {
+    if (stmt.line != 0) line = stmt.line;
+    if (++steps > limits.steps) {
+      throw exceeded(stmt, "Step budget of " + limits.steps + " statements exceeded.");
+    }
+    if (stmt instanceof Stmt.Block && ++environments > limits.environments) {
+      throw exceeded(stmt, "Environment budget of " + limits.environments + " exceeded.");
+    }
+    if (steps % CLOCK_INTERVAL == 0 && elapsed() > maxNanos) {
+      throw exceeded(stmt, "Time budget of " + limits.millis + " ms exceeded.");
+    }
+    if (scheduler != null && steps % scheduler.slice == 0) {
+      scheduler.yield(this, output);
+    }
+
+    super.execute(stmt);
+  }
+
+  @Override
+  Object evaluate (Expr expr) {
+    var value = super.evaluate(expr);
+
+    // only count the strings built by concatenation, the others already exist
+    if (value instanceof String && (expr instanceof Expr.Binary || expr instanceof Expr.VariableLiteral
+            || expr instanceof Expr.VariableVariable || expr instanceof Expr.AssignVariableLiteral)) {
+      bytes += 2L * ((String) value).length();
+      if (bytes > limits.bytes) {
+        throw exceeded(expr, "String budget of " + limits.bytes + " bytes exceeded.");
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * Stops the clock while the session waits for a carrier
+   */
+  void pause () {
+    nanos += System.nanoTime() - resumed;
+  }
+
+  void resume () {
+    resumed = System.nanoTime();
+  }
+
+  private long elapsed () {
+    return nanos + System.nanoTime() - resumed;
+  }
+
+  private Exceeded exceeded (Object node, String message) {
+    var token = node instanceof Expr ? Locator.token((Expr) node) : Locator.token((Stmt) node);
+    if (token == null && node instanceof Stmt.Block) token = new Token(TokenType.LEFT_BRACE, "{", null, line);
+    if (token == null) token = new Token(TokenType.EOF, "", null, line);
+    return new Exceeded(token, message);
+  }
+}
@@ -0,0 +1,58 @@
+package com.benrkia.illi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Thin client of {@link Server}: sends one request and streams the output back
+ * to stdout and stderr.
+ * <p>
+ * Running it still starts a JVM, which costs far more than the request itself.
+ * {@code bin/illi-connect} speaks the same protocol from a shell script with
+ * socat, for callers that run many short scripts.
+ */
+class Client {
+  private final Path socket;
+
+  Client (Path socket) {
+    this.socket = socket;
+  }
+
+  /**
+   * @return the exit status of the script
+   */
+  int send (byte kind, String payload) throws IOException {
+    try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+      channel.connect(UnixDomainSocketAddress.of(socket));
+      var out = new DataOutputStream(Channels.newOutputStream(channel));
+      var in = new DataInputStream(Channels.newInputStream(channel));
+
+      var bytes = payload.getBytes(StandardCharsets.UTF_8);
+      out.writeByte(kind);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.flush();
+
+      for (;;) {
+        var frame = in.readByte();
+        if (frame == Server.EXIT) return in.readInt();
+
+        var chunk = in.readNBytes(in.readInt());
+        var stream = frame == Server.ERR ? System.err : System.out;
+        stream.write(chunk);
+        stream.flush();
+      }
+    } catch (EOFException e) {
+      System.err.println("Connection to " + socket + " closed before the script ended");
+      return 70;
+    }
+  }
+}
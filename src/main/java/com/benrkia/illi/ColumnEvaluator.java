@@ -0,0 +1,356 @@
+package com.benrkia.illi;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates an expression over columns of values, one node at a time for all
+ * the rows instead of one row at a time for all the nodes. Numbers and booleans
+ * are kept in primitive arrays and the arithmetic and comparison kernels are
+ * plain loops over them, which the JIT compiles to SIMD instructions. Other
+ * values fall back to the interpreter's semantics row by row.
+ * <p>
+ * Each row behaves as if the expression was interpreted for it alone: a row
+ * that fails is reported with its index and left out of the rest of the
+ * evaluation, and the branches of a conditional are only evaluated for the rows
+ * that select them. Assignments are not supported.
+ */
+class ColumnEvaluator implements Expr.Visitor<Object> {
+  static class RowError {
+    final int row;
+    final RuntimeError error;
+
+    RowError (int row, RuntimeError error) {
+      this.row = row;
+      this.error = error;
+    }
+  }
+
+  static class Result {
+    /** {@code double[]}, {@code boolean[]} or {@code Object[]}, rows in error are undefined */
+    final Object values;
+    final List<RowError> errors;
+
+    Result (Object values, List<RowError> errors) {
+      this.values = values;
+      this.errors = errors;
+    }
+  }
+
+  /**
+   * A value shared by every row, e.g. a literal
+   */
+  private static class Constant {
+    final Object value;
+
+    Constant (Object value) {
+      this.value = value;
+    }
+  }
+
+  private final Map<String, Object> columns;
+  private final int rows;
+  private final boolean[] alive;
+  private final List<RowError> errors = new ArrayList<>();
+  /** rows being evaluated by the current conditional branch, null for all of them */
+  private boolean[] scope = null;
+  /** columns kept by the {@link Expr.Let}s, by slot */
+  private Object[] slots = new Object[0];
+
+  private ColumnEvaluator (Map<String, Object> columns, int rows) {
+    this.columns = columns;
+    this.rows = rows;
+    this.alive = new boolean[rows];
+    Arrays.fill(alive, true);
+  }
+
+  /**
+   * @param columns a {@code double[]}, {@code String[]} or {@code boolean[]} of {@code rows} values per variable
+   */
+  static Result evaluate (Expr expr, Map<String, Object> columns, int rows) {
+    columns.forEach((name, column) -> {
+      if (!(column instanceof double[] || column instanceof String[] || column instanceof boolean[])) {
+        throw new IllegalArgumentException("Column '" + name + "' must be a double[], String[] or boolean[]");
+      }
+      if (Array.getLength(column) != rows) {
+        throw new IllegalArgumentException("Column '" + name + "' must have " + rows + " rows");
+      }
+    });
+
+    var evaluator = new ColumnEvaluator(columns, rows);
+    var values = evaluator.materialize(expr.accept(evaluator));
+    evaluator.errors.sort(Comparator.comparingInt(error -> error.row));
+    return new Result(values, evaluator.errors);
+  }
+
+  @Override
+  public Object visit (Expr.Assign expr) {
+    throw new IllegalArgumentException("Assignments can't be evaluated over columns");
+  }
+
+  @Override
+  public Object visit (Expr.AssignVariableLiteral expr) {
+    throw new IllegalArgumentException("Assignments can't be evaluated over columns");
+  }
+
+  @Override
+  public Object visit (Expr.Comma expr) {
+    expr.left.accept(this);
+    return expr.right.accept(this);
+  }
+
+  @Override
+  public Object visit (Expr.Conditional expr) {
+    var condition = expr.expr.accept(this);
+    var enclosing = scope;
+
+    var thenRows = new boolean[rows];
+    var elseRows = new boolean[rows];
+    for (var row = 0; row < rows; ++row) {
+      if (!isActive(row)) continue;
+      var truthy = InterpreterImpl.isTruthy(valueAt(condition, row));
+      thenRows[row] = truthy;
+      elseRows[row] = !truthy;
+    }
+
+    try {
+      scope = thenRows;
+      var thenBranch = expr.thenBranch.accept(this);
+      scope = elseRows;
+      var elseBranch = expr.elseBranch.accept(this);
+
+      if (isNumeric(thenBranch) && isNumeric(elseBranch)) {
+        var left = numbers(thenBranch);
+        var right = numbers(elseBranch);
+        var merged = new double[rows];
+        for (var row = 0; row < rows; ++row) {
+          merged[row] = thenRows[row] ? left[row] : right[row];
+        }
+        return merged;
+      }
+
+      var merged = new Object[rows];
+      for (var row = 0; row < rows; ++row) {
+        if (thenRows[row]) merged[row] = valueAt(thenBranch, row);
+        else if (elseRows[row]) merged[row] = valueAt(elseBranch, row);
+      }
+      return merged;
+    } finally {
+      scope = enclosing;
+    }
+  }
+
+  @Override
+  public Object visit (Expr.Binary expr) {
+    var left = expr.left.accept(this);
+    var right = expr.right.accept(this);
+    return binary(expr.operator, left, right);
+  }
+
+  @Override
+  public Object visit (Expr.VariableLiteral expr) {
+    return binary(expr.operator, variable(expr.name), new Constant(expr.value));
+  }
+
+  @Override
+  public Object visit (Expr.VariableVariable expr) {
+    var left = variable(expr.left);
+    var right = variable(expr.right);
+    return binary(expr.operator, left, right);
+  }
+
+  @Override
+  public Object visit (Expr.Unary expr) {
+    var right = expr.right.accept(this);
+
+    if (expr.operator.type == TokenType.MINUS && isNumeric(right)) {
+      var operand = numbers(right);
+      var negated = new double[rows];
+      for (var row = 0; row < rows; ++row) negated[row] = -operand[row];
+      return negated;
+    }
+    if (expr.operator.type == TokenType.BANG && right instanceof boolean[]) {
+      var operand = (boolean[]) right;
+      var not = new boolean[rows];
+      for (var row = 0; row < rows; ++row) not[row] = !operand[row];
+      return not;
+    }
+
+    var result = new Object[rows];
+    for (var row = 0; row < rows; ++row) {
+      if (!isActive(row)) continue;
+      try {
+        result[row] = InterpreterImpl.unary(expr.operator, valueAt(right, row));
+      } catch (RuntimeError error) {
+        fail(row, error);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Object visit (Expr.Literal expr) {
+    return new Constant(expr.value);
+  }
+
+  @Override
+  public Object visit (Expr.Grouping expr) {
+    return expr.expression.accept(this);
+  }
+
+  @Override
+  public Object visit (Expr.Variable expr) {
+    return variable(expr.name);
+  }
+
+  @Override
+  public Object visit (Expr.Let expr) {
+    var column = expr.expr.accept(this);
+    if (expr.slot >= slots.length) slots = Arrays.copyOf(slots, expr.slot + 1);
+    slots[expr.slot] = column;
+    return column;
+  }
+
+  @Override
+  public Object visit (Expr.Slot expr) {
+    return slots[expr.slot];
+  }
+
+  private Object variable (Token name) {
+    var column = columns.get(name.lexeme);
+    if (column == null && !columns.containsKey(name.lexeme)) {
+      var error = new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+      for (var row = 0; row < rows; ++row) {
+        if (isActive(row)) fail(row, error);
+      }
+      return new Constant(null);
+    }
+    return column;
+  }
+
+  private Object binary (Token operator, Object left, Object right) {
+    if (isNumeric(left) && isNumeric(right)) {
+      var numeric = numeric(operator, numbers(left), numbers(right));
+      if (numeric != null) return numeric;
+    }
+
+    var result = new Object[rows];
+    for (var row = 0; row < rows; ++row) {
+      if (!isActive(row)) continue;
+      try {
+        result[row] = InterpreterImpl.binary(operator, valueAt(left, row), valueAt(right, row));
+      } catch (RuntimeError error) {
+        fail(row, error);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The kernels run over every row, active or not, so that they stay free of
+   * branches; only division checks its divisors for the active rows.
+   *
+   * @return the result column, or null when the operator has no numeric kernel
+   */
+  private Object numeric (Token operator, double[] left, double[] right) {
+    switch (operator.type) {
+      case PLUS: {
+        var result = new double[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] + right[row];
+        return result;
+      }
+      case MINUS: {
+        var result = new double[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] - right[row];
+        return result;
+      }
+      case STAR: {
+        var result = new double[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] * right[row];
+        return result;
+      }
+      case SLASH: {
+        var result = new double[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] / right[row];
+        for (var row = 0; row < rows; ++row) {
+          if (right[row] == 0.0 && isActive(row)) {
+            fail(row, new RuntimeError(operator, "Arithmetic division by 0"));
+          }
+        }
+        return result;
+      }
+      case GREATER: {
+        var result = new boolean[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] > right[row];
+        return result;
+      }
+      case GREATER_EQUAL: {
+        var result = new boolean[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] >= right[row];
+        return result;
+      }
+      case LESS: {
+        var result = new boolean[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] < right[row];
+        return result;
+      }
+      case LESS_EQUAL: {
+        var result = new boolean[rows];
+        for (var row = 0; row < rows; ++row) result[row] = left[row] <= right[row];
+        return result;
+      }
+      default:
+        // == and != compare boxed doubles, which differs from the primitive
+        // comparison for NaN and -0.0, let the interpreter do them
+        return null;
+    }
+  }
+
+  private boolean isActive (int row) {
+    return alive[row] && (scope == null || scope[row]);
+  }
+
+  private void fail (int row, RuntimeError error) {
+    alive[row] = false;
+    errors.add(new RowError(row, error));
+  }
+
+  private boolean isNumeric (Object column) {
+    return column instanceof double[]
+            || column instanceof Constant && ((Constant) column).value instanceof Double;
+  }
+
+  private double[] numbers (Object column) {
+    if (column instanceof double[]) return (double[]) column;
+
+    var numbers = new double[rows];
+    Arrays.fill(numbers, (double) ((Constant) column).value);
+    return numbers;
+  }
+
+  private Object valueAt (Object column, int row) {
+    if (column instanceof double[]) return ((double[]) column)[row];
+    if (column instanceof boolean[]) return ((boolean[]) column)[row];
+    if (column instanceof Constant) return ((Constant) column).value;
+    return ((Object[]) column)[row];
+  }
+
+  private Object materialize (Object column) {
+    if (!(column instanceof Constant)) return column;
+
+    var value = ((Constant) column).value;
+    if (value instanceof Double) return numbers(column);
+    if (value instanceof Boolean) {
+      var booleans = new boolean[rows];
+      Arrays.fill(booleans, (boolean) value);
+      return booleans;
+    }
+    var values = new Object[rows];
+    Arrays.fill(values, value);
+    return values;
+  }
+}
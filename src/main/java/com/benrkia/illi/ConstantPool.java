@@ -0,0 +1,66 @@
+package com.benrkia.illi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The literal values of a program, so that identical literals share one
+ * instance across its tokens and tree. Numbers are looked up by their bits in
+ * an open addressing table, without boxing the number being looked up.
+ */
+class ConstantPool {
+  private long[] keys = new long[64];
+  private Double[] numbers = new Double[64];
+  private int size = 0;
+  private final Map<String, String> strings = new HashMap<>();
+
+  Double number (double value) {
+    var bits = Double.doubleToRawLongBits(value);
+    var mask = keys.length - 1;
+    var i = hash(bits) & mask;
+    while (numbers[i] != null) {
+      if (keys[i] == bits) return numbers[i];
+      i = (i + 1) & mask;
+    }
+
+    var number = (Double) value;
+    keys[i] = bits;
+    numbers[i] = number;
+    if (++size > keys.length >>> 1) grow();
+    return number;
+  }
+
+  String string (String value) {
+    var shared = strings.putIfAbsent(value, value);
+    return shared == null ? value : shared;
+  }
+
+  private void grow () {
+    var oldKeys = keys;
+    var oldNumbers = numbers;
+    keys = new long[oldKeys.length << 1];
+    numbers = new Double[oldNumbers.length << 1];
+
+    var mask = keys.length - 1;
+    for (var j = 0; j < oldKeys.length; ++j) {
+      if (oldNumbers[j] == null) continue;
+      var i = hash(oldKeys[j]) & mask;
+      while (numbers[i] != null) i = (i + 1) & mask;
+      keys[i] = oldKeys[j];
+      numbers[i] = oldNumbers[j];
+    }
+  }
+
+  /**
+   * The finalizer of murmur3, so that every bit of the number reaches the low
+   * bits of the hash: integer valued doubles have all their low bits zero
+   */
+  static int hash (long bits) {
+    bits ^= bits >>> 33;
+    bits *= 0xff51afd7ed558ccdL;
+    bits ^= bits >>> 33;
+    bits *= 0xc4ceb9fe1a85ec53L;
+    bits ^= bits >>> 33;
+    return (int) bits;
+  }
+}
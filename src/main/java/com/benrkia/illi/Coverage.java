@@ -0,0 +1,227 @@
+package com.benrkia.illi;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Records which statements and branches of conditionals are executed, in a
+ * bitmap indexed by the dense index {@link #register(List)} gives each of them.
+ * Install it with {@link InterpreterImpl#cover(Coverage)} and register the
+ * statements before interpreting them.
+ * <p>
+ * The interpreter sets the bits itself rather than through an
+ * {@link Instrument}, which would add a call to every evaluation: coverage
+ * costs a null check and a bit set per statement and branch.
+ * <p>
+ * Statements are reported on the line they start on, branches on the line of
+ * their first token, or of their conditional when they are literals.
+ */
+class Coverage {
+  private long[] bits = new long[1];
+  private int[] lines = new int[64];
+  /** ordinal of the conditional of each branch, -1 for statements */
+  private int[] conditionals = new int[64];
+  private int size = 0;
+  private int conditionalCount = 0;
+
+  /**
+   * Gives the statements and branches of {@code statements} the next indexes
+   */
+  List<Stmt> register (List<Stmt> statements) {
+    var indexer = new Indexer();
+    statements.forEach(statement -> indexer.index(statement, 0));
+    if (bits.length << 6 < size) bits = Arrays.copyOf(bits, (size + 63) >>> 6);
+    return statements;
+  }
+
+  void mark (int index) {
+    if (index >= 0) bits[index >>> 6] |= 1L << index;
+  }
+
+  /**
+   * Writes an LCOV tracefile of {@code file}. Hit counts are 0 or 1, since
+   * only whether a node was executed is recorded.
+   */
+  void writeLcov (Writer out, String file) throws IOException {
+    var hits = new TreeMap<Integer, Boolean>();
+    var branchesFound = 0;
+    var branchesHit = 0;
+
+    out.write("TN:\n");
+    out.write("SF:" + file + "\n");
+    for (var index = 0; index < size; ++index) {
+      if (lines[index] == 0) continue;
+
+      var hit = (bits[index >>> 6] & 1L << index) != 0;
+      if (conditionals[index] < 0) {
+        hits.merge(lines[index], hit, Boolean::logicalOr);
+        continue;
+      }
+
+      var conditional = conditionals[index];
+      var branch = index > 0 && conditionals[index - 1] == conditional ? 1 : 0;
+      out.write("BRDA:" + lines[index] + "," + conditional + "," + branch + "," + (hit ? 1 : 0) + "\n");
+      ++branchesFound;
+      if (hit) ++branchesHit;
+    }
+    out.write("BRF:" + branchesFound + "\n");
+    out.write("BRH:" + branchesHit + "\n");
+
+    var linesHit = 0;
+    for (var entry: hits.entrySet()) {
+      out.write("DA:" + entry.getKey() + "," + (entry.getValue() ? 1 : 0) + "\n");
+      if (entry.getValue()) ++linesHit;
+    }
+    out.write("LF:" + hits.size() + "\n");
+    out.write("LH:" + linesHit + "\n");
+    out.write("end_of_record\n");
+  }
+
+  private int add (int line, int conditional) {
+    if (size == lines.length) {
+      lines = Arrays.copyOf(lines, size * 2);
+      conditionals = Arrays.copyOf(conditionals, size * 2);
+    }
+    lines[size] = line;
+    conditionals[size] = conditional;
+    return size++;
+  }
+
+  private class Indexer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    /** line of the enclosing node, for the nodes without a token */
+    private int line = 0;
+
+    void index (Stmt stmt, int enclosing) {
+      var line = stmt.line != 0 ? stmt.line : Locator.line(stmt);
+      this.line = line == 0 ? enclosing : line;
+      stmt.index = add(this.line, -1);
+      stmt.accept(this);
+    }
+
+    private void index (Expr expr) {
+      if (expr != null) expr.accept(this);
+    }
+
+    @Override
+    public Void visit (Stmt.Expression stmt) {
+      index(stmt.expr);
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Print stmt) {
+      index(stmt.expr);
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Var stmt) {
+      index(stmt.initializer);
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Vars stmt) {
+      var line = this.line;
+      stmt.variables.forEach(variable -> index(variable, line));
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Block stmt) {
+      var line = this.line;
+      stmt.statements.forEach(statement -> index(statement, line));
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Assign expr) {
+      index(expr.value);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Comma expr) {
+      index(expr.left);
+      index(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Conditional expr) {
+      index(expr.expr);
+
+      var conditional = conditionalCount++;
+      expr.thenBranch.index = add(line(expr.thenBranch, expr), conditional);
+      expr.elseBranch.index = add(line(expr.elseBranch, expr), conditional);
+
+      index(expr.thenBranch);
+      index(expr.elseBranch);
+      return null;
+    }
+
+    private int line (Expr branch, Expr.Conditional conditional) {
+      var line = Locator.line(branch);
+      if (line == 0) line = Locator.line(conditional);
+      return line == 0 ? this.line : line;
+    }
+
+    @Override
+    public Void visit (Expr.Binary expr) {
+      index(expr.left);
+      index(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Unary expr) {
+      index(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Literal expr) {
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Grouping expr) {
+      index(expr.expression);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Variable expr) {
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.VariableLiteral expr) {
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.VariableVariable expr) {
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.AssignVariableLiteral expr) {
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Let expr) {
+      index(expr.expr);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Slot expr) {
+      return null;
+    }
+  }
+}
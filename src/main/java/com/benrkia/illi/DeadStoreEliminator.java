@@ -0,0 +1,491 @@
+package com.benrkia.illi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the declarations of variables that are never read and the
+ * assignments whose value is never read, from a liveness analysis over the
+ * statements and their block scopes. Since a program has no loops nor
+ * functions, each variable reference resolves to a single declaration and the
+ * analysis is a single backward pass, merging the two branches of conditionals.
+ * <p>
+ * Only what can't have an effect is removed: a dead assignment is replaced by
+ * its value, which is still evaluated, and so is the initializer of an unused
+ * declaration unless it is made of literals only, the only expressions that
+ * can't fail. Declarations are kept when they are redeclared in their scope,
+ * which fails at runtime, and so are the global ones when the globals outlive
+ * the program, e.g. in the prompt or when saved to a snapshot.
+ */
+class DeadStoreEliminator implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  private static class Declaration {
+    final int id;
+    final Token name;
+    /** the block declaring it, 0 for the globals */
+    final int block;
+    /** kept whatever the analysis finds */
+    boolean pinned;
+    /** read, or assigned a value that is read */
+    boolean referenced = false;
+    boolean removed = false;
+
+    Declaration (int id, Token name, int block, boolean pinned) {
+      this.id = id;
+      this.name = name;
+      this.block = block;
+      this.pinned = pinned;
+    }
+  }
+
+  private static class Warning {
+    final Token token;
+    final String message;
+    /** the declaration of a dead assignment, which isn't reported when the declaration is removed */
+    final Declaration assigned;
+
+    Warning (Token token, String message, Declaration assigned) {
+      this.token = token;
+      this.message = message;
+      this.assigned = assigned;
+    }
+  }
+
+  private final boolean globalsLive;
+  private final Reporter reporter;
+  /** declaration of each variable reference, in evaluation order, null when it isn't declared by the program */
+  private final List<Declaration> references = new ArrayList<>();
+  private int reference;
+  /** whether the branches of each conditional assign declared variables, in the order they end */
+  private final BitSet assigningConditionals = new BitSet();
+  private int conditional;
+  /** the declarations whose value may still be read */
+  private BitSet live = new BitSet();
+  private final List<Warning> warnings = new ArrayList<>();
+
+  /**
+   * @param globalsLive whether the global variables may be read or redeclared after the program
+   * @param reporter where to report what is removed, when it reports warnings
+   */
+  DeadStoreEliminator (boolean globalsLive, Reporter reporter) {
+    this.globalsLive = globalsLive;
+    this.reporter = reporter;
+  }
+
+  List<Stmt> eliminate (List<Stmt> statements) {
+    var resolver = new Resolver();
+    resolver.resolve(statements);
+    reference = references.size();
+    conditional = resolver.conditionals;
+    var eliminated = eliminateAll(statements);
+
+    warnings.removeIf(warning -> warning.assigned != null && warning.assigned.removed);
+    // found backward, report them forward
+    Collections.reverse(warnings);
+    warnings.sort(Comparator.comparingInt(warning -> warning.token.line));
+    warnings.forEach(warning -> reporter.warning(warning.token, warning.message));
+    return eliminated;
+  }
+
+  private List<Stmt> eliminateAll (List<Stmt> statements) {
+    var eliminated = new ArrayDeque<Stmt>(statements.size());
+    for (var i = statements.size() - 1; i >= 0; --i) {
+      var stmt = statements.get(i);
+      var kept = stmt.accept(this);
+      if (kept == null) continue;
+      if (kept != stmt && kept.line == 0) kept.line = stmt.line;
+      eliminated.addFirst(kept);
+    }
+    return new ArrayList<>(eliminated);
+  }
+
+  private Expr eliminate (Expr expr) {
+    return expr == null ? null : expr.accept(this);
+  }
+
+  /**
+   * Expressions that can't fail nor have effects, so that they may be
+   * removed when their value isn't used
+   */
+  private static boolean isPure (Expr expr) {
+    if (expr instanceof Expr.Literal) return true;
+    if (expr instanceof Expr.Grouping) return isPure(((Expr.Grouping) expr).expression);
+    if (expr instanceof Expr.Comma) {
+      var comma = (Expr.Comma) expr;
+      return isPure(comma.left) && isPure(comma.right);
+    }
+    if (expr instanceof Expr.Conditional) {
+      var conditional = (Expr.Conditional) expr;
+      return isPure(conditional.expr) && isPure(conditional.thenBranch) && isPure(conditional.elseBranch);
+    }
+    if (expr instanceof Expr.Unary) {
+      var unary = (Expr.Unary) expr;
+      return unary.operator.type == TokenType.BANG && isPure(unary.right);
+    }
+    if (expr instanceof Expr.Binary) {
+      // only equality is defined for any operands
+      var binary = (Expr.Binary) expr;
+      var type = binary.operator.type;
+      return (type == TokenType.EQUAL_EQUAL || type == TokenType.BANG_EQUAL)
+              && isPure(binary.left) && isPure(binary.right);
+    }
+    return false;
+  }
+
+  private void warn (Token token, String message, Declaration assigned) {
+    if (reporter.warnings) warnings.add(new Warning(token, message, assigned));
+  }
+
+  private void read () {
+    var declaration = references.get(--reference);
+    if (declaration != null) {
+      live.set(declaration.id);
+      declaration.referenced = true;
+    }
+  }
+
+  /**
+   * @return whether the value assigned is never read
+   */
+  private boolean assigned (Token name) {
+    var declaration = references.get(--reference);
+    if (declaration == null || declaration.pinned) return false;
+
+    var dead = !live.get(declaration.id);
+    live.clear(declaration.id);
+    if (dead) {
+      warn(name, "Value assigned to '" + name.lexeme + "' is never read", declaration);
+    } else {
+      declaration.referenced = true;
+    }
+    return dead;
+  }
+
+  @Override
+  public Stmt visit (Stmt.Expression stmt) {
+    var expr = eliminate(stmt.expr);
+    if (isPure(expr)) return null;
+    return expr == stmt.expr ? stmt : new Stmt.Expression(expr);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Print stmt) {
+    var expr = eliminate(stmt.expr);
+    return expr == stmt.expr ? stmt : new Stmt.Print(expr);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Var stmt) {
+    // evaluated as: declare, initialize then assign
+    var dead = stmt.initializer != null && assigned(stmt.name);
+    var initializer = eliminate(stmt.initializer);
+    var declaration = references.get(--reference);
+
+    if (!declaration.pinned && !declaration.referenced) {
+      declaration.removed = true;
+      warn(stmt.name, "Variable '" + stmt.name.lexeme + "' is never read", null);
+      if (initializer == null || isPure(initializer)) return null;
+
+      return new Stmt.Expression(initializer);
+    }
+
+    if (dead && isPure(initializer)) return new Stmt.Var(stmt.name, null);
+    return initializer == stmt.initializer ? stmt : new Stmt.Var(stmt.name, initializer);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Vars stmt) {
+    var variables = eliminateAll(stmt.variables);
+    if (variables.isEmpty()) return null;
+    return variables.equals(stmt.variables) ? stmt : new Stmt.Vars(variables);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Block stmt) {
+    var statements = eliminateAll(stmt.statements);
+    if (statements.isEmpty()) return null;
+    return statements.equals(stmt.statements) ? stmt : new Stmt.Block(statements);
+  }
+
+  @Override
+  public Expr visit (Expr.Assign expr) {
+    var dead = assigned(expr.name);
+    var value = eliminate(expr.value);
+    if (dead) return value;
+    return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+  }
+
+  @Override
+  public Expr visit (Expr.Comma expr) {
+    var right = eliminate(expr.right);
+    var left = eliminate(expr.left);
+    return left == expr.left && right == expr.right ? expr : new Expr.Comma(left, right);
+  }
+
+  @Override
+  public Expr visit (Expr.Conditional expr) {
+    // a value is live before the branches if either of them may read it, when
+    // they don't assign anything that's just what both of them read
+    Expr elseBranch;
+    Expr thenBranch;
+    if (assigningConditionals.get(--conditional)) {
+      var after = live;
+      live = (BitSet) after.clone();
+      elseBranch = eliminate(expr.elseBranch);
+      var elseLive = live;
+
+      live = after;
+      thenBranch = eliminate(expr.thenBranch);
+      live.or(elseLive);
+    } else {
+      elseBranch = eliminate(expr.elseBranch);
+      thenBranch = eliminate(expr.thenBranch);
+    }
+
+    var condition = eliminate(expr.expr);
+    return condition == expr.expr && thenBranch == expr.thenBranch && elseBranch == expr.elseBranch
+            ? expr : new Expr.Conditional(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Expr visit (Expr.Binary expr) {
+    var right = eliminate(expr.right);
+    var left = eliminate(expr.left);
+    return left == expr.left && right == expr.right ? expr : new Expr.Binary(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visit (Expr.Unary expr) {
+    var right = eliminate(expr.right);
+    return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visit (Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.Grouping expr) {
+    var expression = eliminate(expr.expression);
+    return expression == expr.expression ? expr : new Expr.Grouping(expression);
+  }
+
+  @Override
+  public Expr visit (Expr.Variable expr) {
+    read();
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.VariableLiteral expr) {
+    read();
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.VariableVariable expr) {
+    read();
+    read();
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.AssignVariableLiteral expr) {
+    var dead = assigned(expr.name);
+    read();
+    return dead ? new Expr.VariableLiteral(expr.variable, expr.operator, expr.value) : expr;
+  }
+
+  @Override
+  public Expr visit (Expr.Let expr) {
+    var value = eliminate(expr.expr);
+    return value == expr.expr ? expr : new Expr.Let(expr.slot, value);
+  }
+
+  @Override
+  public Expr visit (Expr.Slot expr) {
+    return expr;
+  }
+
+  /**
+   * Resolves the variable references to their declarations, in evaluation order
+   */
+  private class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    /** innermost declaration of each name */
+    private final Map<String, Declaration> scope = new HashMap<>();
+    /** every declaration, by id */
+    private final List<Declaration> declared = new ArrayList<>();
+    /** the declaration each one shadowed, by id, to restore when leaving its block */
+    private final List<Declaration> shadowed = new ArrayList<>();
+    private int blocks = 0;
+    private int block = 0;
+    private int conditionals = 0;
+    private int assignments = 0;
+
+    void resolve (List<Stmt> statements) {
+      statements.forEach(this::resolve);
+    }
+
+    private void resolve (Stmt stmt) {
+      stmt.accept(this);
+    }
+
+    private void resolve (Expr expr) {
+      if (expr != null) expr.accept(this);
+    }
+
+    private void reference (Token name) {
+      references.add(scope.get(name.lexeme));
+    }
+
+    private void assignment (Token name) {
+      var declaration = scope.get(name.lexeme);
+      references.add(declaration);
+      if (declaration != null) ++assignments;
+    }
+
+    @Override
+    public Void visit (Stmt.Expression stmt) {
+      resolve(stmt.expr);
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Print stmt) {
+      resolve(stmt.expr);
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Var stmt) {
+      var declaration = new Declaration(declared.size(), stmt.name, block, block == 0 && globalsLive);
+      var previous = scope.put(stmt.name.lexeme, declaration);
+      if (previous != null && previous.block == block) {
+        // redeclaring fails at runtime, the first declaration has to stay to fail the second
+        previous.pinned = true;
+        declaration.pinned = true;
+      }
+      declared.add(declaration);
+      shadowed.add(previous);
+      references.add(declaration);
+
+      resolve(stmt.initializer);
+      if (stmt.initializer != null) references.add(declaration);
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Vars stmt) {
+      stmt.variables.forEach(this::resolve);
+      return null;
+    }
+
+    @Override
+    public Void visit (Stmt.Block stmt) {
+      var enclosing = block;
+      var start = declared.size();
+      block = ++blocks;
+      stmt.statements.forEach(this::resolve);
+
+      for (var i = declared.size() - 1; i >= start; --i) {
+        var previous = shadowed.get(i);
+        if (previous == null) scope.remove(declared.get(i).name.lexeme);
+        else scope.put(previous.name.lexeme, previous);
+      }
+      block = enclosing;
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Assign expr) {
+      resolve(expr.value);
+      assignment(expr.name);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Comma expr) {
+      resolve(expr.left);
+      resolve(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Conditional expr) {
+      resolve(expr.expr);
+      var before = assignments;
+      resolve(expr.thenBranch);
+      resolve(expr.elseBranch);
+      if (assignments != before) assigningConditionals.set(conditionals);
+      ++conditionals;
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Binary expr) {
+      resolve(expr.left);
+      resolve(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Unary expr) {
+      resolve(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Literal expr) {
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Grouping expr) {
+      resolve(expr.expression);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Variable expr) {
+      reference(expr.name);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.VariableLiteral expr) {
+      reference(expr.name);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.VariableVariable expr) {
+      reference(expr.left);
+      reference(expr.right);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.AssignVariableLiteral expr) {
+      reference(expr.variable);
+      assignment(expr.name);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Let expr) {
+      resolve(expr.expr);
+      return null;
+    }
+
+    @Override
+    public Void visit (Expr.Slot expr) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.benrkia.illi;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A reporter collecting the lexer and parser errors of a source instead of
+ * printing them, for tools checking many scripts at once.
+ */
+class Diagnostics extends Reporter {
+  static class Diagnostic {
+    final int line;
+    /** the token the error is at, empty at the end of the source and null for lexer errors */
+    final String lexeme;
+    final String message;
+
+    Diagnostic (int line, String lexeme, String message) {
+      this.line = line;
+      this.lexeme = lexeme;
+      this.message = message;
+    }
+
+    @Override
+    public String toString () {
+      if (lexeme == null) return "[line " + line + "] Error: " + message;
+      if (lexeme.isEmpty()) return "[line " + line + "] Error at end: " + message;
+      return "[line " + line + "] Error at '" + lexeme + "': " + message;
+    }
+  }
+
+  private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+  Diagnostics (PrintStream err) {
+    super(err);
+  }
+
+  @Override
+  void syntaxError (int line, String lexeme, String where, String message) {
+    diagnostics.add(new Diagnostic(line, lexeme, message));
+  }
+
+  List<Diagnostic> diagnostics () {
+    return diagnostics;
+  }
+
+  /**
+   * Lexes and parses {@code source} without running it
+   *
+   * @return the errors by line, lexer errors first within a line
+   */
+  static List<Diagnostic> check (String source) {
+    var diagnostics = new Diagnostics(System.err);
+    var tokens = new Lexer(source, diagnostics).scanTokens();
+    new Parser(tokens, diagnostics).parse();
+    diagnostics.diagnostics.sort(Comparator.comparingInt(diagnostic -> diagnostic.line));
+    return diagnostics.diagnostics;
+  }
+
+  /**
+   * Checks the scripts matching {@code patterns} in parallel and prints their
+   * diagnostics prefixed with their file, in the order of the files
+   *
+   * @return 65 if any script has errors, 0 otherwise
+   */
+  static int check (List<String> patterns, PrintStream report) throws IOException {
+    var files = new Batch().collect(patterns);
+    var results = files.parallelStream()
+            .map(Diagnostics::checkFile)
+            .collect(Collectors.toList());
+
+    var failed = 0;
+    for (var i = 0; i < files.size(); ++i) {
+      var diagnostics = results.get(i);
+      if (diagnostics.isEmpty()) continue;
+
+      ++failed;
+      for (var diagnostic: diagnostics) {
+        report.println(files.get(i) + ": " + diagnostic);
+      }
+    }
+    report.println(files.size() + " files checked, " + failed + " with errors");
+    return failed == 0 ? 0 : 65;
+  }
+
+  private static List<Diagnostic> checkFile (Path file) {
+    try {
+      return check(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      return List.of(new Diagnostic(0, null, "Can't read file: " + e.getMessage()));
+    } catch (RuntimeException | StackOverflowError e) {
+      // e.g. a nesting too deep for the parser, the other files are still checked
+      return List.of(new Diagnostic(0, null, "Internal error: " + e));
+    }
+  }
+}
@@ -0,0 +1,432 @@
+package com.benrkia.illi;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The tokens and top-level declarations of a source being edited, kept up to
+ * date incrementally for editor integrations.
+ * <p>
+ * An edit is re-lexed from the token before it until the lexer produces a token
+ * the previous pass produced at the same place past the edit: the lexer has no
+ * state between tokens, so the rest of the stream is the same. Declarations
+ * before the damaged tokens are kept, the following ones are re-parsed until a
+ * declaration ends on a boundary of the previous parse past the damage, from
+ * where the previous {@link Stmt} trees are reused.
+ * <p>
+ * The source, the tokens and the declarations are gap buffers whose gap is left
+ * at the last edit, so an edit costs the damaged region and the distance from
+ * the previous edit, not the size of the source. Past the gap, offsets and
+ * token indexes are kept relative to the end, and lines as the line count they
+ * were right for: an edit adding lines doesn't touch what follows it. The
+ * tokens and the declarations past an edit get their lines moved in place when
+ * they are read, or when the gap moves over them.
+ */
+class Document {
+  private final Reporter reporter;
+  private final Text source;
+  /** lines added by all the edits, which the lines past the gap are relative to */
+  private int lines = 0;
+
+  private Token[] tokens = new Token[64];
+  /** offset of each token before the gap, its distance from the end of the source after it */
+  private int[] starts = new int[64];
+  /** past the gap, the value of {@link #lines} when the line of each token was last right */
+  private int[] stamps = new int[64];
+  private int tokenGap = 0;
+  private int tokenGapEnd = 64;
+
+  private Stmt[] statements = new Stmt[16];
+  /** index of the first token of each declaration before the gap, from the token count after it */
+  private int[] boundaries = new int[16];
+  private int statementGap = 0;
+  private int statementGapEnd = 16;
+
+  private final List<Token> tokenView = new Tokens();
+  private final List<Stmt> statementView = new Statements();
+
+  Document (String source, Reporter reporter) {
+    this.reporter = reporter;
+    this.source = new Text(source);
+
+    var lexer = new Lexer(this.source, reporter, 0, 1);
+    for (var token = lexer.scanNext(); token != null; token = lexer.scanNext()) {
+      insertToken(token, lexer.tokenStart());
+    }
+    insertToken(new Token(TokenType.EOF, "", null, lexer.line()), source.length());
+
+    var parser = new Parser(tokenView, reporter);
+    for (var position = 0; position < tokenCount() - 1; position = parser.position()) {
+      insertStatement(parser.declarationAt(position), position);
+    }
+  }
+
+  String source () {
+    return source.toString();
+  }
+
+  List<Token> tokens () {
+    return tokenView;
+  }
+
+  List<Stmt> statements () {
+    return statementView;
+  }
+
+  /**
+   * Replaces {@code removed} characters at {@code offset} with {@code inserted}
+   */
+  void edit (int offset, int removed, String inserted) {
+    if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+      throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removed) + ") is outside of the source");
+    }
+
+    // the token before the edit is damaged too, it may merge with the inserted text
+    var first = firstEndingAt(offset);
+    if (first > 0) --first;
+    var restart = 0;
+    var restartLine = 1;
+    if (first > 0) {
+      // tokens are on the line they end on, which for multi-line strings isn't the one they start on
+      var token = token(first);
+      restart = start(first);
+      restartLine = token.line - newlines(token.lexeme, 0, token.lexeme.length());
+    }
+
+    // keep the declarations whose tokens, including the one that ended them, are all before the damage
+    var kept = 0;
+    var count = statementCount();
+    if (count > 0) {
+      kept = boundarySearch(first);
+      kept = kept >= 0 ? Math.max(kept - 1, 0) : Math.max(-kept - 2, 0);
+    }
+    var reparseFrom = kept < count ? boundary(kept) : 0;
+
+    // everything past the gaps is then relative to the end, which the edit moves
+    moveTokenGap(first);
+    moveStatementGap(kept);
+    var lineDelta = newlines(inserted, 0, inserted.length()) - newlines(source, offset, offset + removed);
+    source.replace(offset, removed, inserted);
+    lines += lineDelta;
+    var editEnd = offset + inserted.length();
+
+    // EOF is past the gap, the last element of the buffer
+    var lexer = new Lexer(source, reporter, restart, restartLine);
+    var resynced = false;
+    for (var token = lexer.scanNext(); token != null; token = lexer.scanNext()) {
+      var start = lexer.tokenStart();
+      // drop the previous tokens the new ones cover
+      while (tokenGapEnd < tokens.length - 1 && starts[tokenGapEnd] + source.length() < start) dropToken();
+      if (start >= editEnd && tokenGapEnd < tokens.length - 1 && starts[tokenGapEnd] + source.length() == start) {
+        var old = tokens[tokenGapEnd];
+        if (old.type == token.type && old.lexeme.equals(token.lexeme)) {
+          resynced = true;
+          break;
+        }
+      }
+      insertToken(token, start);
+    }
+    if (!resynced) {
+      var eof = tokens.length - 1;
+      while (tokenGapEnd < eof) dropToken();
+      tokens[eof].line = lexer.line();
+      stamps[eof] = lines;
+    }
+
+    reparse(reparseFrom, tokenGap, resynced);
+  }
+
+  /**
+   * @param position index of the first token to re-parse
+   * @param damageEnd index of the first token past the re-lexed ones
+   * @param resynced whether the tokens from {@code damageEnd} on are the previous ones
+   */
+  private void reparse (int position, int damageEnd, boolean resynced) {
+    var parser = new Parser(tokenView, reporter);
+    while (position < tokenCount() - 1) {
+      // drop the previous declarations the new ones cover
+      while (statementGapEnd < statements.length && boundaries[statementGapEnd] + tokenCount() < position) {
+        dropStatement();
+      }
+      if (resynced && position >= damageEnd && statementGapEnd < statements.length
+              && boundaries[statementGapEnd] + tokenCount() == position) {
+        return;
+      }
+
+      insertStatement(parser.declarationAt(position), position);
+      position = parser.position();
+    }
+    while (statementGapEnd < statements.length) dropStatement();
+  }
+
+  private int tokenCount () {
+    return tokens.length - tokenGapEnd + tokenGap;
+  }
+
+  /**
+   * @return the token at {@code index}, its line moved by the edits since it was last read
+   */
+  private Token token (int index) {
+    Objects.checkIndex(index, tokenCount());
+    if (index < tokenGap) return tokens[index];
+
+    var physical = index + tokenGapEnd - tokenGap;
+    var token = tokens[physical];
+    token.line += lines - stamps[physical];
+    stamps[physical] = lines;
+    return token;
+  }
+
+  private int start (int index) {
+    return index < tokenGap ? starts[index] : starts[index + tokenGapEnd - tokenGap] + source.length();
+  }
+
+  private void insertToken (Token token, int start) {
+    if (tokenGap == tokenGapEnd) {
+      var length = tokens.length;
+      var capacity = length << 1;
+      var tail = length - tokenGapEnd;
+      tokens = grow(tokens, length, new Token[capacity], capacity, tokenGap, tail);
+      starts = grow(starts, length, new int[capacity], capacity, tokenGap, tail);
+      stamps = grow(stamps, length, new int[capacity], capacity, tokenGap, tail);
+      tokenGapEnd = capacity - tail;
+    }
+    tokens[tokenGap] = token;
+    starts[tokenGap++] = start;
+  }
+
+  private void dropToken () {
+    tokens[tokenGapEnd++] = null;
+  }
+
+  private void moveTokenGap (int to) {
+    while (tokenGap > to) {
+      --tokenGap;
+      --tokenGapEnd;
+      tokens[tokenGapEnd] = tokens[tokenGap];
+      starts[tokenGapEnd] = starts[tokenGap] - source.length();
+      stamps[tokenGapEnd] = lines;
+      tokens[tokenGap] = null;
+    }
+    while (tokenGap < to) {
+      var token = tokens[tokenGapEnd];
+      token.line += lines - stamps[tokenGapEnd];
+      tokens[tokenGap] = token;
+      starts[tokenGap] = starts[tokenGapEnd] + source.length();
+      tokens[tokenGapEnd] = null;
+      ++tokenGap;
+      ++tokenGapEnd;
+    }
+  }
+
+  private int statementCount () {
+    return statements.length - statementGapEnd + statementGap;
+  }
+
+  /**
+   * @return the declaration at {@code index}, with its lines and the lines of its tokens moved by the edits since
+   */
+  private Stmt statement (int index) {
+    Objects.checkIndex(index, statementCount());
+    var stmt = index < statementGap ? statements[index] : statements[index + statementGapEnd - statementGap];
+
+    var from = boundary(index);
+    var to = index + 1 < statementCount() ? boundary(index + 1) : tokenCount() - 1;
+    for (var i = from; i < to; ++i) token(i);
+    if (stmt != null) {
+      var delta = token(from).line - stmt.line;
+      if (delta != 0) shift(stmt, delta);
+    }
+    return stmt;
+  }
+
+  private int boundary (int index) {
+    return index < statementGap
+            ? boundaries[index]
+            : boundaries[index + statementGapEnd - statementGap] + tokenCount();
+  }
+
+  private void insertStatement (Stmt stmt, int boundary) {
+    if (statementGap == statementGapEnd) {
+      var length = statements.length;
+      var capacity = length << 1;
+      var tail = length - statementGapEnd;
+      statements = grow(statements, length, new Stmt[capacity], capacity, statementGap, tail);
+      boundaries = grow(boundaries, length, new int[capacity], capacity, statementGap, tail);
+      statementGapEnd = capacity - tail;
+    }
+    statements[statementGap] = stmt;
+    boundaries[statementGap++] = boundary;
+  }
+
+  private void dropStatement () {
+    statements[statementGapEnd++] = null;
+  }
+
+  private void moveStatementGap (int to) {
+    while (statementGap > to) {
+      --statementGap;
+      --statementGapEnd;
+      statements[statementGapEnd] = statements[statementGap];
+      boundaries[statementGapEnd] = boundaries[statementGap] - tokenCount();
+      statements[statementGap] = null;
+    }
+    while (statementGap < to) {
+      statements[statementGap] = statements[statementGapEnd];
+      boundaries[statementGap] = boundaries[statementGapEnd] + tokenCount();
+      statements[statementGapEnd] = null;
+      ++statementGap;
+      ++statementGapEnd;
+    }
+  }
+
+  /**
+   * @return index of the declaration starting at token {@code position}, or {@code -(insertion point) - 1}
+   */
+  private int boundarySearch (int position) {
+    int low = 0, high = statementCount() - 1;
+    while (low <= high) {
+      var middle = (low + high) >>> 1;
+      var boundary = boundary(middle);
+      if (boundary < position) low = middle + 1;
+      else if (boundary > position) high = middle - 1;
+      else return middle;
+    }
+    return -low - 1;
+  }
+
+  /**
+   * @return index of the first token ending at or after {@code offset}, EOF if none
+   */
+  private int firstEndingAt (int offset) {
+    int low = 0, high = tokenCount() - 1;
+    while (low < high) {
+      var middle = (low + high) >>> 1;
+      var token = middle < tokenGap ? tokens[middle] : tokens[middle + tokenGapEnd - tokenGap];
+      if (start(middle) + token.lexeme.length() >= offset) high = middle;
+      else low = middle + 1;
+    }
+    return low;
+  }
+
+  /**
+   * Moves the lines of {@code stmt} and of the statements it contains, the ones
+   * parsed from a source
+   */
+  private static void shift (Stmt stmt, int delta) {
+    if (stmt == null || stmt.line == 0) return;
+    stmt.line += delta;
+    if (stmt instanceof Stmt.Vars) {
+      ((Stmt.Vars) stmt).variables.forEach(variable -> shift(variable, delta));
+    } else if (stmt instanceof Stmt.Block) {
+      ((Stmt.Block) stmt).statements.forEach(statement -> shift(statement, delta));
+    }
+  }
+
+  /**
+   * @return {@code grown}, with the {@code head} first elements of {@code array} first and its {@code tail} last ones last
+   */
+  private static <T> T grow (T array, int length, T grown, int capacity, int head, int tail) {
+    System.arraycopy(array, 0, grown, 0, head);
+    System.arraycopy(array, length - tail, grown, capacity - tail, tail);
+    return grown;
+  }
+
+  private static int newlines (CharSequence text, int from, int to) {
+    var count = 0;
+    for (var i = from; i < to; ++i) {
+      if (text.charAt(i) == '\n') ++count;
+    }
+    return count;
+  }
+
+  private class Tokens extends AbstractList<Token> implements RandomAccess {
+    @Override
+    public Token get (int index) {
+      return token(index);
+    }
+
+    @Override
+    public int size () {
+      return tokenCount();
+    }
+  }
+
+  private class Statements extends AbstractList<Stmt> implements RandomAccess {
+    @Override
+    public Stmt get (int index) {
+      return statement(index);
+    }
+
+    @Override
+    public int size () {
+      return statementCount();
+    }
+  }
+
+  /**
+   * The characters of the source, with a gap at the last edit
+   */
+  private static class Text implements CharSequence {
+    private char[] chars;
+    private int gap;
+    private int gapEnd;
+
+    Text (String source) {
+      chars = new char[Math.max(64, source.length() * 2)];
+      source.getChars(0, source.length(), chars, 0);
+      gap = source.length();
+      gapEnd = chars.length;
+    }
+
+    @Override
+    public int length () {
+      return chars.length - gapEnd + gap;
+    }
+
+    @Override
+    public char charAt (int index) {
+      return chars[index < gap ? index : index + gapEnd - gap];
+    }
+
+    @Override
+    public String subSequence (int from, int to) {
+      if (to <= gap) return new String(chars, from, to - from);
+      var gapLength = gapEnd - gap;
+      if (from >= gap) return new String(chars, from + gapLength, to - from);
+      return new StringBuilder(to - from)
+              .append(chars, from, gap - from)
+              .append(chars, gapEnd, to - gap)
+              .toString();
+    }
+
+    @Override
+    public String toString () {
+      return subSequence(0, length());
+    }
+
+    void replace (int offset, int removed, String inserted) {
+      var gapLength = gapEnd - gap;
+      if (offset < gap) {
+        System.arraycopy(chars, offset, chars, offset + gapLength, gap - offset);
+      } else {
+        System.arraycopy(chars, gapEnd, chars, gap, offset - gap);
+      }
+      gap = offset;
+      gapEnd = offset + gapLength + removed;
+
+      if (gapEnd - gap < inserted.length()) {
+        var tail = chars.length - gapEnd;
+        var grown = new char[Math.max(chars.length * 2, length() + inserted.length() + 64)];
+        System.arraycopy(chars, 0, grown, 0, gap);
+        System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+        chars = grown;
+        gapEnd = grown.length - tail;
+      }
+      inserted.getChars(0, inserted.length(), chars, gap);
+      gap += inserted.length();
+    }
+  }
+}
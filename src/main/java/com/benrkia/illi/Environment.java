@@ -1,48 +1,111 @@
 package com.benrkia.illi;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * The variables of a scope. A global environment may be forked from another
+ * one: the fork shares the frozen variables of its base and only copies a
+ * variable into its own when it assigns it, so forking is O(1) and a session
+ * costs what it changes.
+ */
 public class Environment {
+  /** value of the variables declared without an initializer, until they are assigned */
+  static final Object uninitialized = new Object();
+
   private final Environment enclosing;
+  private final int depth;
   private final Map<String, Object> values = new HashMap<>();
+  /** the variables shared with the other forks of the same base, never modified */
+  private final Map<String, Object> base;
 
   Environment() {
-    enclosing = null;
+    this(null);
   }
 
   Environment(Environment enclosing) {
+    this(enclosing, null);
+  }
+
+  private Environment(Environment enclosing, Map<String, Object> base) {
     this.enclosing = enclosing;
+    this.base = base;
+    this.depth = enclosing == null ? 0 : enclosing.depth + 1;
+    Metrics.environmentAllocated();
+
+    if (Events.recording()) {
+      var event = new Events.EnvironmentAllocation();
+      if (event.shouldCommit()) {
+        event.depth = depth;
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * The variables this environment defined or assigned itself, for {@link Snapshot}
+   */
+  Map<String, Object> values() {
+    return values;
+  }
+
+  /**
+   * All the variables of this environment, including the ones of its base
+   */
+  Map<String, Object> bindings() {
+    if (base == null) return values;
+
+    var bindings = new HashMap<>(base);
+    bindings.putAll(values);
+    return bindings;
+  }
+
+  /**
+   * A new global environment starting with the variables of this one. Forking
+   * an environment that didn't change since it was forked itself shares its
+   * base, otherwise its variables are frozen into a new base first.
+   */
+  Environment fork() {
+    if (base != null && values.isEmpty()) return new Environment(null, base);
+    return new Environment(null, Collections.unmodifiableMap(new HashMap<>(bindings())));
   }
 
   void define(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
+    if (values.containsKey(name.lexeme) || base != null && base.containsKey(name.lexeme)) {
       throw new RuntimeError(name, "Identifier '" + name.lexeme + "' has already been declared");
     }
     values.put(name.lexeme, value);
   }
 
   void assign(Token name, Object value) {
-    if (values.containsKey(name.lexeme)) {
-      values.put(name.lexeme, value);
-      return;
-    }
-
-    if (enclosing != null) {
-      enclosing.assign(name, value);
-      return;
+    var hops = 0;
+    for (var environment = this; environment != null; environment = environment.enclosing) {
+      if (environment.values.containsKey(name.lexeme)
+              || environment.base != null && environment.base.containsKey(name.lexeme)) {
+        Metrics.lookup(hops);
+        // the first assignment of a base variable copies it into this environment
+        environment.values.put(name.lexeme, value);
+        return;
+      }
+      ++hops;
     }
 
     throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
   }
 
   Object get(Token name) {
-    if (values.containsKey(name.lexeme)) {
-      return values.get(name.lexeme);
-    }
-
-    if (enclosing != null) {
-      return enclosing.get(name);
+    var hops = 0;
+    for (var environment = this; environment != null; environment = environment.enclosing) {
+      if (environment.values.containsKey(name.lexeme)) {
+        Metrics.lookup(hops);
+        return environment.values.get(name.lexeme);
+      }
+      if (environment.base != null && environment.base.containsKey(name.lexeme)) {
+        Metrics.lookup(hops);
+        return environment.base.get(name.lexeme);
+      }
+      ++hops;
     }
 
     throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
@@ -0,0 +1,110 @@
+package com.benrkia.illi;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events emitted while running a script. The phase and
+ * error events are enabled by default, block entries and environment
+ * allocations are too frequent for that and have to be enabled in a custom
+ * {@code .jfc} settings file, e.g.
+ * <pre>
+ *   &lt;event name="illi.BlockEntry"&gt;
+ *     &lt;setting name="enabled"&gt;true&lt;/setting&gt;
+ *     &lt;setting name="threshold"&gt;1 ms&lt;/setting&gt;
+ *   &lt;/event&gt;
+ * </pre>
+ * The events are only created once {@link #recording()}.
+ */
+final class Events {
+  private Events() {}
+
+  /**
+   * Whether Flight Recorder was started in this JVM. Loading the first event
+   * class sets up the JFR event machinery, which is most of the start-up time
+   * of a short script, so they aren't touched before.
+   */
+  static boolean recording () {
+    return FlightRecorder.isInitialized();
+  }
+
+  @Name("illi.LexPhase")
+  @Label("Lex Phase")
+  @Category("Illi")
+  @StackTrace(false)
+  static class LexPhase extends Event {
+    @Label("Bytes")
+    int bytes;
+
+    @Label("Tokens")
+    int tokens;
+  }
+
+  @Name("illi.ParsePhase")
+  @Label("Parse Phase")
+  @Category("Illi")
+  @StackTrace(false)
+  static class ParsePhase extends Event {
+    @Label("Statements")
+    int statements;
+
+    @Label("Errors")
+    int errors;
+  }
+
+  @Name("illi.ExecutePhase")
+  @Label("Execute Phase")
+  @Category("Illi")
+  @StackTrace(false)
+  static class ExecutePhase extends Event {
+    @Label("Statements")
+    int statements;
+  }
+
+  @Name("illi.IlliRuntimeError")
+  @Label("Illi Runtime Error")
+  @Category("Illi")
+  @StackTrace(false)
+  static class IlliRuntimeError extends Event {
+    @Label("Token")
+    String token;
+
+    @Label("Line")
+    int line;
+
+    @Label("Message")
+    String message;
+  }
+
+  @Name("illi.BlockEntry")
+  @Label("Block Entry")
+  @Description("Execution of a block statement, recorded when it takes longer than the threshold")
+  @Category("Illi")
+  @StackTrace(false)
+  @Enabled(false)
+  @Threshold("10 ms")
+  static class BlockEntry extends Event {
+    @Label("Line")
+    int line;
+
+    @Label("Statements")
+    int statements;
+  }
+
+  @Name("illi.EnvironmentAllocation")
+  @Label("Environment Allocation")
+  @Category("Illi")
+  @StackTrace(false)
+  @Enabled(false)
+  static class EnvironmentAllocation extends Event {
+    @Label("Depth")
+    int depth;
+  }
+}
@@ -1,6 +1,9 @@
 package com.benrkia.illi;
 
 abstract class Expr {
+  /** dense index given by {@link Coverage}, -1 when the node isn't covered */
+  int index = -1;
+
   abstract <R> R accept(Visitor<R> visitor);
 
   interface Visitor<R> {
@@ -12,6 +15,11 @@ abstract class Expr {
     R visit(Literal expr);
     R visit(Grouping expr);
     R visit(Variable expr);
+    R visit(VariableLiteral expr);
+    R visit(VariableVariable expr);
+    R visit(AssignVariableLiteral expr);
+    R visit(Let expr);
+    R visit(Slot expr);
   }
 
   static class Assign extends Expr {
@@ -132,4 +140,102 @@ abstract class Expr {
     final Token name;
   }
 
+  /**
+   * Fused {@code Variable op Literal}, see {@link Fuser}
+   */
+  static class VariableLiteral extends Expr {
+    VariableLiteral(Token name, Token operator, Object value) {
+      this.name = name;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visit(this);
+    }
+
+    final Token name;
+    final Token operator;
+    final Object value;
+  }
+
+  /**
+   * Fused {@code Variable op Variable}, see {@link Fuser}
+   */
+  static class VariableVariable extends Expr {
+    VariableVariable(Token left, Token operator, Token right) {
+      this.left = left;
+      this.operator = operator;
+      this.right = right;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visit(this);
+    }
+
+    final Token left;
+    final Token operator;
+    final Token right;
+  }
+
+  /**
+   * Fused {@code name = Variable op Literal}, see {@link Fuser}
+   */
+  static class AssignVariableLiteral extends Expr {
+    AssignVariableLiteral(Token name, Token variable, Token operator, Object value) {
+      this.name = name;
+      this.variable = variable;
+      this.operator = operator;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visit(this);
+    }
+
+    final Token name;
+    final Token variable;
+    final Token operator;
+    final Object value;
+  }
+
+  /**
+   * Evaluates {@code expr} and keeps its value in a temporary slot for the
+   * {@link Slot}s that reuse it, see {@link SubexpressionEliminator}
+   */
+  static class Let extends Expr {
+    Let(int slot, Expr expr) {
+      this.slot = slot;
+      this.expr = expr;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visit(this);
+    }
+
+    final int slot;
+    final Expr expr;
+  }
+
+  /**
+   * The value kept by the {@link Let} of the same slot, which is always
+   * evaluated before
+   */
+  static class Slot extends Expr {
+    Slot(int slot) {
+      this.slot = slot;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visit(this);
+    }
+
+    final int slot;
+  }
+
 }
@@ -0,0 +1,177 @@
+package com.benrkia.illi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the most common expression shapes into fused nodes that the
+ * interpreter evaluates in a single visit:
+ * <ul>
+ *   <li>{@code Variable op Literal} into {@link Expr.VariableLiteral}</li>
+ *   <li>{@code Variable op Variable} into {@link Expr.VariableVariable}</li>
+ *   <li>{@code name = Variable op Literal} into {@link Expr.AssignVariableLiteral}</li>
+ *   <li>{@code Literal ? a : b} into the branch it selects</li>
+ * </ul>
+ * Evaluation order and runtime errors are the same as for the original tree.
+ */
+class Fuser implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  /** whether conditionals on a literal are replaced by their branch */
+  private final boolean fold;
+
+  Fuser () {
+    this(true);
+  }
+
+  Fuser (boolean fold) {
+    this.fold = fold;
+  }
+
+  List<Stmt> fuse (List<Stmt> statements) {
+    var fused = new ArrayList<Stmt>(statements.size());
+    for (var stmt: statements) {
+      fused.add(fuse(stmt));
+    }
+    return fused;
+  }
+
+  private Stmt fuse (Stmt stmt) {
+    var fused = stmt.accept(this);
+    fused.line = stmt.line;
+    return fused;
+  }
+
+  private Expr fuse (Expr expr) {
+    return expr == null ? null : expr.accept(this);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Expression stmt) {
+    return new Stmt.Expression(fuse(stmt.expr));
+  }
+
+  @Override
+  public Stmt visit (Stmt.Print stmt) {
+    return new Stmt.Print(fuse(stmt.expr));
+  }
+
+  @Override
+  public Stmt visit (Stmt.Var stmt) {
+    return new Stmt.Var(stmt.name, fuse(stmt.initializer));
+  }
+
+  @Override
+  public Stmt visit (Stmt.Vars stmt) {
+    return new Stmt.Vars(fuse(stmt.variables));
+  }
+
+  @Override
+  public Stmt visit (Stmt.Block stmt) {
+    return new Stmt.Block(fuse(stmt.statements));
+  }
+
+  @Override
+  public Expr visit (Expr.Assign expr) {
+    var value = fuse(expr.value);
+
+    if (value instanceof Expr.VariableLiteral) {
+      var binary = (Expr.VariableLiteral) value;
+      return new Expr.AssignVariableLiteral(expr.name, binary.name, binary.operator, binary.value);
+    }
+
+    return new Expr.Assign(expr.name, value);
+  }
+
+  @Override
+  public Expr visit (Expr.Comma expr) {
+    return new Expr.Comma(fuse(expr.left), fuse(expr.right));
+  }
+
+  @Override
+  public Expr visit (Expr.Conditional expr) {
+    var condition = operand(fuse(expr.expr));
+
+    if (fold && condition instanceof Expr.Literal) {
+      var value = ((Expr.Literal) condition).value;
+      return InterpreterImpl.isTruthy(value) ? fuse(expr.thenBranch) : fuse(expr.elseBranch);
+    }
+
+    return new Expr.Conditional(condition, fuse(expr.thenBranch), fuse(expr.elseBranch));
+  }
+
+  @Override
+  public Expr visit (Expr.Binary expr) {
+    var left = operand(fuse(expr.left));
+    var right = operand(fuse(expr.right));
+
+    if (left instanceof Expr.Variable && right instanceof Expr.Literal) {
+      return new Expr.VariableLiteral(((Expr.Variable) left).name, expr.operator,
+              ((Expr.Literal) right).value);
+    }
+    if (left instanceof Expr.Variable && right instanceof Expr.Variable) {
+      return new Expr.VariableVariable(((Expr.Variable) left).name, expr.operator,
+              ((Expr.Variable) right).name);
+    }
+
+    return new Expr.Binary(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visit (Expr.Unary expr) {
+    return new Expr.Unary(expr.operator, fuse(expr.right));
+  }
+
+  @Override
+  public Expr visit (Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.Grouping expr) {
+    return new Expr.Grouping(fuse(expr.expression));
+  }
+
+  @Override
+  public Expr visit (Expr.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.VariableLiteral expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.VariableVariable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.AssignVariableLiteral expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visit (Expr.Let expr) {
+    return new Expr.Let(expr.slot, fuse(expr.expr));
+  }
+
+  @Override
+  public Expr visit (Expr.Slot expr) {
+    return expr;
+  }
+
+  /**
+   * Groupings around a literal or a variable don't change anything, unwrap them
+   * so that {@code x + (1)} is fused as well
+   */
+  private Expr operand (Expr expr) {
+    while (expr instanceof Expr.Grouping) {
+      var inner = ((Expr.Grouping) expr).expression;
+      if (!(inner instanceof Expr.Grouping || inner instanceof Expr.Literal || inner instanceof Expr.Variable)) {
+        break;
+      }
+      expr = inner;
+    }
+    return expr;
+  }
+}
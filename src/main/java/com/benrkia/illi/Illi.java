@@ -1,30 +1,296 @@
 package com.benrkia.illi;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.*;
-import java.nio.charset.Charset;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 class Illi {
-  private static final Interpreter<List<Stmt>> interpreter = new InterpreterImpl();
-
-  static boolean hadError = false;
-  static boolean hadRuntimeError = false;
+  private static final Reporter reporter = new Reporter(System.err);
+  private static Interpreter<List<Stmt>> interpreter;
+  /** with --coverage, so that no statement or branch is optimized away from the report */
+  private static boolean covering = false;
+  private static final String TRACER_MBEAN = "com.benrkia.illi:type=Tracer";
 
   public static void main (String[] args) throws IOException {
+    String profile = null;
+    String metrics = null;
+    String coverage = null;
+    var trace = 0L;
+    String serve = null;
+    String connect = null;
+    String saveSnapshot = null;
+    String loadSnapshot = null;
+    String prelude = null;
+    String train = null;
+    var dumpMetrics = false;
+    var warn = false;
+    var limits = new Budget.Limits();
+    var batch = false;
+    var check = false;
+    var files = new ArrayList<String>();
+    for (var arg: args) {
+      if (arg.startsWith("--profile=")) {
+        profile = arg.substring("--profile=".length());
+      } else if (arg.startsWith("--metrics=")) {
+        metrics = arg.substring("--metrics=".length());
+      } else if (arg.startsWith("--trace=")) {
+        trace = limit(arg);
+      } else if (arg.startsWith("--coverage=")) {
+        coverage = arg.substring("--coverage=".length());
+      } else if (arg.equals("--batch")) {
+        batch = true;
+      } else if (arg.equals("--check")) {
+        check = true;
+      } else if (arg.equals("--warn")) {
+        warn = true;
+      } else if (arg.startsWith("--serve=")) {
+        serve = arg.substring("--serve=".length());
+      } else if (arg.startsWith("--connect=")) {
+        connect = arg.substring("--connect=".length());
+      } else if (arg.startsWith("--save-snapshot=")) {
+        saveSnapshot = arg.substring("--save-snapshot=".length());
+      } else if (arg.startsWith("--train=")) {
+        train = arg.substring("--train=".length());
+      } else if (arg.startsWith("--prelude=")) {
+        prelude = arg.substring("--prelude=".length());
+      } else if (arg.startsWith("--load-snapshot=")) {
+        loadSnapshot = arg.substring("--load-snapshot=".length());
+      } else if (arg.equals("--dump-metrics")) {
+        dumpMetrics = true;
+      } else if (arg.startsWith("--max-steps=")) {
+        limits.steps = limit(arg);
+      } else if (arg.startsWith("--max-millis=")) {
+        limits.millis = limit(arg);
+      } else if (arg.startsWith("--max-string-bytes=")) {
+        limits.bytes = limit(arg);
+      } else if (arg.startsWith("--max-environments=")) {
+        limits.environments = limit(arg);
+      } else if (arg.startsWith("--")) {
+        usage();
+      } else {
+        files.add(arg);
+      }
+    }
+    if (batch ? files.isEmpty() || profile != null || coverage != null || trace > 0 : files.size() > 1 && !check && train == null) usage();
+    if (trace < 0 || trace > 1 << 24) usage();
+    if (dumpMetrics && connect == null) usage();
+    if (check && (batch || files.isEmpty())) usage();
+    if (prelude != null && (loadSnapshot != null || connect != null || check)) usage();
+    if ((saveSnapshot != null || loadSnapshot != null) && (batch || serve != null || connect != null)) usage();
+    if (warn && (batch || check || serve != null || connect != null || train != null)) usage();
+
+    if (train != null) {
+      if (batch || check || files.isEmpty()) usage();
+      System.exit(train(train, files));
+    }
+    if (check) {
+      System.exit(Diagnostics.check(files, System.out));
+    }
+    var base = prelude == null ? null : prelude(prelude);
+    if (serve != null) {
+      new Server(Paths.get(serve), limits, base).serve();
+      return;
+    }
+    if (connect != null) {
+      var client = new Client(Paths.get(connect));
+      int status;
+      if (dumpMetrics) {
+        status = client.send(Server.METRICS, "");
+      } else if (files.isEmpty()) {
+        status = client.send(Server.SOURCE, new String(System.in.readAllBytes(), StandardCharsets.UTF_8));
+      } else {
+        status = client.send(Server.FILE, Paths.get(files.get(0)).toAbsolutePath().toString());
+      }
+      System.exit(status);
+    }
+
+    Environment globals;
+    if (loadSnapshot != null) globals = snapshot(loadSnapshot);
+    else if (base != null) globals = base.fork();
+    else globals = new Environment();
+    var impl = new InterpreterImpl(System.out, reporter, globals);
+    if (!limits.isUnlimited()) impl.instrument(new Budget(limits));
+    Profiler profiler = null;
+    if (profile != null) {
+      profiler = new Profiler();
+      impl.instrument(profiler);
+    }
+    if (trace > 0) {
+      var tracer = new Tracer((int) trace, System.err);
+      impl.instrument(tracer);
+      dumpOnDemand(tracer);
+    }
+    interpreter = impl;
+    reporter.warnings = warn;
+    Coverage covered = null;
+    if (coverage != null) {
+      covering = true;
+      covered = new Coverage();
+      impl.cover(covered);
+      var registering = covered;
+      interpreter = statements -> impl.interpret(registering.register(statements));
+    }
 
-    if (args.length > 1) {
-      System.out.println("Usage: Illi <source file>");
-      System.exit(64);
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    var status = 0;
+    if (batch) {
+      status = new Batch(base, limits).run(files, System.out);
+    } else if (files.size() == 1) {
+      // the globals may still be read, or clash with the ones the script starts with
+      status = runFile(files.get(0), saveSnapshot != null || loadSnapshot != null || base != null);
     } else {
       runPrompt();
     }
+
+    if (profiler != null) {
+      try (var out = Files.newBufferedWriter(Paths.get(profile))) {
+        profiler.writeCollapsed(out);
+      }
+      profiler.report(System.err);
+    }
+    if (covered != null) {
+      try (var out = Files.newBufferedWriter(Paths.get(coverage))) {
+        covered.writeLcov(out, files.isEmpty() ? "<stdin>" : Paths.get(files.get(0)).toAbsolutePath().toString());
+      }
+    }
+    if (saveSnapshot != null && status == 0) Snapshot.write(globals, Paths.get(saveSnapshot));
+    if (metrics != null) Metrics.dump(Paths.get(metrics));
+    if (status != 0) System.exit(status);
+  }
+
+  /**
+   * Registers the {@value #TRACER_MBEAN} MBean, whose {@code dump} operation
+   * dumps the trace to stderr from JConsole or any other JMX client. Starting
+   * the MBean server takes a few hundred milliseconds, the script doesn't wait
+   * for it.
+   */
+  private static void dumpOnDemand (Tracer tracer) {
+    var registration = new Thread(() -> {
+      try {
+        Tracer.Dump dump = () -> tracer.dump(System.err);
+        ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new StandardMBean(dump, Tracer.Dump.class), new ObjectName(TRACER_MBEAN));
+      } catch (JMException e) {
+        // the trace is still dumped on runtime errors
+        System.err.println("Warning: the trace can't be dumped on demand: " + e.getMessage());
+      }
+    }, "tracer-mbean");
+    registration.setDaemon(true);
+    registration.start();
   }
 
-  private static void runFile (String filePath) throws IOException {
+  /**
+   * Runs the scripts of {@code corpus} in a new JVM which archives the classes
+   * it loaded to {@code archive} on exit, for the next runs to map them with
+   * {@code -XX:SharedArchiveFile} (see {@code bin/illi}). Classes are only
+   * archived from jars, so this has to run from the jar too.
+   */
+  private static int train (String archive, List<String> corpus) throws IOException {
+    var classpath = System.getProperty("java.class.path");
+    if (!classpath.endsWith(".jar")) {
+      System.err.println("Warning: only JDK classes are archived when Illi doesn't run from a jar");
+    }
+
+    var command = new ArrayList<String>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-XX:ArchiveClassesAtExit=" + archive);
+    command.add("-cp");
+    command.add(classpath);
+    command.add(Illi.class.getName());
+    command.add("--batch");
+    command.addAll(corpus);
+
+    var archivePath = Paths.get(archive);
+    Files.deleteIfExists(archivePath);
+    var process = new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    try {
+      process.waitFor();
+    } catch (InterruptedException e) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      return 70;
+    }
+
+    if (!Files.exists(archivePath)) {
+      System.err.println("The training run didn't write " + archive);
+      return 70;
+    }
+    System.out.println("Wrote " + archive + " (" + Files.size(archivePath) + " bytes)");
+    return 0;
+  }
+
+  /**
+   * Loads the globals of a snapshot, a snapshot that can't be read ends the
+   * run like a source file that can't be
+   */
+  private static Environment snapshot (String filePath) {
+    var path = Paths.get(filePath);
+    if (!Files.isReadable(path)) {
+      System.out.println("File not found: " + filePath);
+      System.exit(66);
+    }
+
+    try {
+      return Snapshot.read(path);
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+      System.exit(65);
+      return null;
+    }
+  }
+
+  /**
+   * Runs the prelude once and freezes its globals, for the sessions to fork
+   */
+  private static Environment prelude (String filePath) throws IOException {
+    var path = Paths.get(filePath);
+    if (!Files.isReadable(path)) {
+      System.out.println("File not found: " + filePath);
+      System.exit(66);
+    }
+
+    var preludeReporter = new Reporter(System.err);
+    var impl = new InterpreterImpl(System.out, preludeReporter);
+    run(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), preludeReporter, impl);
+    if (preludeReporter.status() != 0) System.exit(preludeReporter.status());
+
+    return impl.globals().fork();
+  }
+
+  private static long limit (String arg) {
+    try {
+      return Long.parseLong(arg.substring(arg.indexOf('=') + 1));
+    } catch (NumberFormatException e) {
+      usage();
+      return 0;
+    }
+  }
+
+  private static void usage () {
+    System.out.println("Usage: Illi [--profile=<collapsed stacks file>] [--coverage=<lcov file>] [--metrics=<prometheus file>] [--warn]");
+    System.out.println("            [--trace=<last nodes kept, dumped on runtime errors and by the JMX operation " + TRACER_MBEAN + " dump>] [<limits>] [<snapshots>] [<source file>]");
+    System.out.println("       Illi [--metrics=<prometheus file>] [<limits>] --batch <file, directory or glob>...");
+    System.out.println("       Illi --check <file, directory or glob>...");
+    System.out.println("       Illi --train=<class data sharing archive> <file, directory or glob>...");
+    System.out.println("       Illi [<limits>] --serve=<socket>");
+    System.out.println("       Illi --connect=<socket> [--dump-metrics | <source file>]");
+    System.out.println("Snapshots: --load-snapshot=<file> starts from the globals saved by --save-snapshot=<file>");
+    System.out.println("Prelude: --prelude=<file> runs once, every script, batch script or daemon request starts with its globals");
+    System.out.println("Warnings: --warn reports the variables and the assignments whose value is never read");
+    System.out.println("Limits: --max-steps=<statements> --max-millis=<ms> --max-string-bytes=<bytes> --max-environments=<count>");
+    System.exit(64);
+  }
+
+  private static int runFile (String filePath, boolean globalsLive) throws IOException {
     var sourcePath = Paths.get(filePath);
     if (!Files.isReadable(sourcePath)) {
       System.out.println("File not found: " + filePath);
@@ -32,10 +298,9 @@ class Illi {
     }
 
     var bytes = Files.readAllBytes(sourcePath);
-    run(new String(bytes, Charset.defaultCharset()));
+    run(new String(bytes, StandardCharsets.UTF_8), reporter, interpreter, globalsLive);
 
-    if (hadError) System.exit(65);
-    if (hadRuntimeError) System.exit(70);
+    return reporter.status();
   }
 
   private static void runPrompt () throws IOException {
@@ -48,39 +313,67 @@ class Illi {
       if (line == null || "#exit".equals(line.trim())) {
         break;
       }
-      run(line);
-      hadError = false;
+      run(line, reporter, interpreter);
+      reporter.hadError = false;
     }
   }
 
-  private static void run (String line) {
-    var scanner = new Lexer(line);
-    var tokens = scanner.scanTokens();
-    var statements = new Parser(tokens).parse();
-
-    if (hadError) return;
-
-    interpreter.interpret(statements);
+  private static List<Stmt> optimize (List<Stmt> statements, Reporter reporter, boolean globalsLive) {
+    var live = new DeadStoreEliminator(globalsLive, reporter).eliminate(statements);
+    // the coverage report lists every statement and branch of the source, keep
+    // the ones never needed, the pass still reports them with --warn
+    if (covering) live = statements;
+    return new Fuser(!covering).fuse(new SubexpressionEliminator().eliminate(live));
   }
 
-  static void error (int line, String message) {
-    report(line, "", message);
+  /**
+   * Runs {@code source} in globals that outlive it, e.g. in the prompt
+   */
+  static void run (String source, Reporter reporter, Interpreter<List<Stmt>> interpreter) {
+    run(source, reporter, interpreter, true);
   }
-  static void error (Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
+
+  /**
+   * @param globalsLive whether the globals may be read or redeclared after {@code source},
+   *                    otherwise the unused ones are not even declared
+   */
+  static void run (String source, Reporter reporter, Interpreter<List<Stmt>> interpreter, boolean globalsLive) {
+    // the phase events are only created while Flight Recorder runs
+    var recording = Events.recording();
+
+    var lexPhase = recording ? new Events.LexPhase() : null;
+    if (recording) lexPhase.begin();
+    var tokens = new Lexer(source, reporter).scanTokens();
+    if (recording) {
+      lexPhase.end();
+      if (lexPhase.shouldCommit()) {
+        lexPhase.bytes = source.getBytes(StandardCharsets.UTF_8).length;
+        lexPhase.tokens = tokens.size();
+        lexPhase.commit();
+      }
     }
-  }
-  static void runtimeError (RuntimeError error) {
-    System.err.println("[line "+ error.token.line +"] Error at '"+ error.token.lexeme +"'");
-    System.err.println(error.getMessage());
-    hadRuntimeError = true;
-  }
 
-  private static void report (int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
+    var errors = reporter.errorCount;
+    var parsePhase = recording ? new Events.ParsePhase() : null;
+    if (recording) parsePhase.begin();
+    var statements = new Parser(tokens, reporter).parse();
+    if (recording) {
+      parsePhase.end();
+      if (parsePhase.shouldCommit()) {
+        parsePhase.statements = statements.size();
+        parsePhase.errors = reporter.errorCount - errors;
+        parsePhase.commit();
+      }
+    }
+
+    if (reporter.hadError) return;
+
+    var executePhase = recording ? new Events.ExecutePhase() : null;
+    if (recording) executePhase.begin();
+    interpreter.interpret(optimize(statements, reporter, globalsLive));
+    if (recording) {
+      executePhase.statements = statements.size();
+      executePhase.commit();
+    }
   }
 }
@@ -0,0 +1,121 @@
+package com.benrkia.illi;
+
+/**
+ * Base class of the visitors that {@link InterpreterImpl#instrument(Instrument)}
+ * puts in front of the interpreter. Every visit is forwarded to the next visitor
+ * of the chain through {@link #evaluate(Expr)} and {@link #execute(Stmt)}, which
+ * subclasses override to observe the execution. Since the interpreter only calls
+ * through its instruments when some are installed, they cost nothing otherwise.
+ */
+abstract class Instrument implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+  private Expr.Visitor<Object> exprs;
+  private Stmt.Visitor<Void> stmts;
+
+  void wrap (Expr.Visitor<Object> exprs, Stmt.Visitor<Void> stmts) {
+    this.exprs = exprs;
+    this.stmts = stmts;
+  }
+
+  Object evaluate (Expr expr) {
+    return expr.accept(exprs);
+  }
+
+  void execute (Stmt stmt) {
+    stmt.accept(stmts);
+  }
+
+  @Override
+  public Void visit (Stmt.Expression stmt) {
+    execute(stmt);
+    return null;
+  }
+
+  @Override
+  public Void visit (Stmt.Print stmt) {
+    execute(stmt);
+    return null;
+  }
+
+  @Override
+  public Void visit (Stmt.Var stmt) {
+    execute(stmt);
+    return null;
+  }
+
+  @Override
+  public Void visit (Stmt.Vars stmt) {
+    execute(stmt);
+    return null;
+  }
+
+  @Override
+  public Void visit (Stmt.Block stmt) {
+    execute(stmt);
+    return null;
+  }
+
+  @Override
+  public Object visit (Expr.Assign expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Comma expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Conditional expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Binary expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Unary expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Literal expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Grouping expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Variable expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.VariableLiteral expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.VariableVariable expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.AssignVariableLiteral expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Let expr) {
+    return evaluate(expr);
+  }
+
+  @Override
+  public Object visit (Expr.Slot expr) {
+    return evaluate(expr);
+  }
+}
@@ -1,5 +1,7 @@
 package com.benrkia.illi;
 
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -8,33 +10,82 @@ interface Interpreter<T> {
 }
 
 class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>, Stmt.Visitor<Void> {
-  private Environment environment = new Environment();
-  private static final Object uninitialized = new Object();
+  private final Environment globals;
+  private Environment environment;
+  private static final Object uninitialized = Environment.uninitialized;
+  private Expr.Visitor<Object> evaluator = this;
+  private Stmt.Visitor<Void> executor = this;
+  private final long[] evaluated = new long[Metrics.NODES];
+  private Coverage coverage = null;
+  /** values kept by the {@link Expr.Let}s of the statement being executed */
+  private Object[] slots = new Object[0];
+  private final PrintStream out;
+  private final Reporter reporter;
+
+  InterpreterImpl (PrintStream out, Reporter reporter) {
+    this(out, reporter, new Environment());
+  }
+
+  /**
+   * @param globals the global variables to start from, e.g. restored from a {@link Snapshot}
+   */
+  InterpreterImpl (PrintStream out, Reporter reporter, Environment globals) {
+    this.out = out;
+    this.reporter = reporter;
+    this.globals = globals;
+    this.environment = globals;
+  }
+
+  Environment globals () {
+    return globals;
+  }
+
+  /**
+   * Routes every evaluation and execution through {@code instrument}, in front
+   * of the instruments already installed
+   */
+  void instrument (Instrument instrument) {
+    instrument.wrap(evaluator, executor);
+    evaluator = instrument;
+    executor = instrument;
+  }
+
+  void cover (Coverage coverage) {
+    this.coverage = coverage;
+  }
 
   @Override
   public void interpret (List<Stmt> statements) {
     try {
       statements.forEach(this::execute);
     } catch (RuntimeError error) {
-      Illi.runtimeError(error);
+      Metrics.runtimeError(error);
+      reporter.runtimeError(error);
+    } finally {
+      Metrics.evaluated(evaluated);
     }
   }
 
   @Override
   public Void visit (Stmt.Expression stmt) {
+    ++evaluated[Metrics.EXPRESSION];
     evaluate(stmt.expr);
     return null;
   }
 
   @Override
   public Void visit (Stmt.Print stmt) {
+    ++evaluated[Metrics.PRINT];
     var value = evaluate(stmt.expr);
-    System.out.println(stringify(value));
+    var text = stringify(value);
+    out.println(text);
+    Metrics.printed(text);
     return null;
   }
 
   @Override
   public Void visit (Stmt.Var stmt) {
+    ++evaluated[Metrics.VAR];
     environment.define(stmt.name, uninitialized);
 
     if (stmt.initializer != null) {
@@ -46,12 +97,32 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
 
   @Override
   public Void visit (Stmt.Vars stmt) {
+    ++evaluated[Metrics.VARS];
     stmt.variables.forEach(this::execute);
     return null;
   }
 
   @Override
   public Void visit (Stmt.Block stmt) {
+    ++evaluated[Metrics.BLOCK];
+    if (!Events.recording()) {
+      executeBlock(stmt);
+      return null;
+    }
+
+    var event = new Events.BlockEntry();
+    event.begin();
+    executeBlock(stmt);
+    event.end();
+    if (event.shouldCommit()) {
+      event.line = Locator.line(stmt);
+      event.statements = stmt.statements.size();
+      event.commit();
+    }
+    return null;
+  }
+
+  private void executeBlock (Stmt.Block stmt) {
     var enclosing = environment;
     try {
       this.environment = new Environment(enclosing);
@@ -59,15 +130,16 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
     } finally {
       this.environment = enclosing;
     }
-    return null;
   }
 
   private void execute(Stmt stmt) {
-    stmt.accept(this);
+    if (coverage != null) coverage.mark(stmt.index);
+    stmt.accept(executor);
   }
 
   @Override
   public Object visit (Expr.Assign expr) {
+    ++evaluated[Metrics.ASSIGN];
     Object value = evaluate(expr.value);
     environment.assign(expr.name, value);
 
@@ -76,33 +148,81 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
 
   @Override
   public Object visit (Expr.Comma expr) {
+    ++evaluated[Metrics.COMMA];
     evaluate(expr.left); // C-like evaluate and discard
     return evaluate(expr.right);
   }
 
   @Override
   public Object visit (Expr.Conditional expr) {
+    ++evaluated[Metrics.CONDITIONAL];
     var condition = evaluate(expr.expr);
-    return isTruthy(condition) ?
-      evaluate(expr.thenBranch) : evaluate(expr.elseBranch);
+    var branch = isTruthy(condition) ? expr.thenBranch : expr.elseBranch;
+    if (coverage != null) coverage.mark(branch.index);
+    return evaluate(branch);
   }
 
   @Override
   public Object visit (Expr.Binary expr) {
+    ++evaluated[Metrics.BINARY];
     var left = evaluate(expr.left);
     var right = evaluate(expr.right);
 
-    switch (expr.operator.type) {
+    return binary(expr.operator, left, right);
+  }
+
+  @Override
+  public Object visit (Expr.VariableLiteral expr) {
+    ++evaluated[Metrics.VARIABLE_LITERAL];
+    return binary(expr.operator, lookup(expr.name), expr.value);
+  }
+
+  @Override
+  public Object visit (Expr.VariableVariable expr) {
+    ++evaluated[Metrics.VARIABLE_VARIABLE];
+    var left = lookup(expr.left);
+    var right = lookup(expr.right);
+
+    return binary(expr.operator, left, right);
+  }
+
+  @Override
+  public Object visit (Expr.AssignVariableLiteral expr) {
+    ++evaluated[Metrics.ASSIGN_VARIABLE_LITERAL];
+    var value = binary(expr.operator, lookup(expr.variable), expr.value);
+    environment.assign(expr.name, value);
+
+    return value;
+  }
+
+  @Override
+  public Object visit (Expr.Let expr) {
+    ++evaluated[Metrics.LET];
+    var value = evaluate(expr.expr);
+    if (expr.slot >= slots.length) slots = Arrays.copyOf(slots, expr.slot + 1);
+    slots[expr.slot] = value;
+
+    return value;
+  }
+
+  @Override
+  public Object visit (Expr.Slot expr) {
+    ++evaluated[Metrics.SLOT];
+    return slots[expr.slot];
+  }
+
+  static Object binary (Token operator, Object left, Object right) {
+    switch (operator.type) {
       case MINUS:
-        requireNumberOperands(expr.operator, left, right);
+        requireNumberOperands(operator, left, right);
         return (double) left - (double) right;
       case STAR:
-        requireNumberOperands(expr.operator, left, right);
+        requireNumberOperands(operator, left, right);
         return (double) left * (double) right;
       case SLASH:
-        requireNumberOperands(expr.operator, left, right);
+        requireNumberOperands(operator, left, right);
         if ((double) right == 0.0) {
-          throw new RuntimeError(expr.operator, "Arithmetic division by 0");
+          throw new RuntimeError(operator, "Arithmetic division by 0");
         }
         return (double) left / (double) right;
       case PLUS:
@@ -112,7 +232,7 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
         if (left instanceof String || right instanceof String) {
           return stringify(left).concat(stringify(right));
         }
-        throw new RuntimeError(expr.operator,
+        throw new RuntimeError(operator,
                 "Operands must be two numbers or at least one of them is string.");
       case GREATER:
         if (left instanceof Double && right instanceof Double) {
@@ -121,7 +241,7 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
         if (left instanceof String && right instanceof String) {
           return ((String) left).compareTo((String) right) > 0;
         }
-        throw new RuntimeError(expr.operator,
+        throw new RuntimeError(operator,
                 "Operands must be two numbers or two strings.");
       case GREATER_EQUAL:
         if (left instanceof Double && right instanceof Double) {
@@ -130,7 +250,7 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
         if (left instanceof String && right instanceof String) {
           return ((String) left).compareTo((String) right) >= 0;
         }
-        throw new RuntimeError(expr.operator,
+        throw new RuntimeError(operator,
                 "Operands must be two numbers or two strings.");
       case LESS:
         if (left instanceof Double && right instanceof Double) {
@@ -139,7 +259,7 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
         if (left instanceof String && right instanceof String) {
           return ((String) left).compareTo((String) right) < 0;
         }
-        throw new RuntimeError(expr.operator,
+        throw new RuntimeError(operator,
                 "Operands must be two numbers or two strings.");
       case LESS_EQUAL:
         if (left instanceof Double && right instanceof Double) {
@@ -148,7 +268,7 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
         if (left instanceof String && right instanceof String) {
           return ((String) left).compareTo((String) right) <= 0;
         }
-        throw new RuntimeError(expr.operator,
+        throw new RuntimeError(operator,
                 "Operands must be two numbers or two strings.");
       case BANG_EQUAL:
         return !isEqual(left, right);
@@ -160,10 +280,15 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
 
   @Override
   public Object visit (Expr.Unary expr) {
+    ++evaluated[Metrics.UNARY];
     var right = evaluate(expr.right);
-    switch (expr.operator.type) {
+    return unary(expr.operator, right);
+  }
+
+  static Object unary (Token operator, Object right) {
+    switch (operator.type) {
       case MINUS:
-        requireNumberOperand(expr.operator, right);
+        requireNumberOperand(operator, right);
         return -(double) right;
       case BANG:
         return !isTruthy(right);
@@ -174,53 +299,60 @@ class InterpreterImpl implements Interpreter<List<Stmt>>, Expr.Visitor<Object>,
 
   @Override
   public Object visit (Expr.Literal expr) {
+    ++evaluated[Metrics.LITERAL];
     return expr.value;
   }
 
   @Override
   public Object visit (Expr.Grouping expr) {
+    ++evaluated[Metrics.GROUPING];
     return evaluate(expr.expression);
   }
 
   @Override
   public Object visit (Expr.Variable expr) {
-    var value = environment.get(expr.name);
+    ++evaluated[Metrics.VARIABLE];
+    return lookup(expr.name);
+  }
+
+  private Object lookup (Token name) {
+    var value = environment.get(name);
 
     if (value == uninitialized) {
-      throw new RuntimeError(expr.name, "Variable '" + expr.name.lexeme + "' might not have been initialized");
+      throw new RuntimeError(name, "Variable '" + name.lexeme + "' might not have been initialized");
     }
 
     return value;
   }
 
   private Object evaluate(Expr expr) {
-    return expr.accept(this);
+    return expr.accept(evaluator);
   }
 
   /**
    * Check Truthiness using Ruby's style: everything is truthy except for false & nil
    */
-  private boolean isTruthy (Object value) {
+  static boolean isTruthy (Object value) {
     if (value == null) return false;
     if (value instanceof Boolean) return (boolean) value;
     return true;
   }
 
-  private boolean isEqual (Object o1, Object o2) {
+  private static boolean isEqual (Object o1, Object o2) {
     return Objects.equals(o1, o2);
   }
 
-  private void requireNumberOperand (Token operator, Object operand) {
+  private static void requireNumberOperand (Token operator, Object operand) {
     if (operand instanceof Double) return;
     throw new RuntimeError(operator, "Operand must be a number");
   }
 
-  private void requireNumberOperands (Token operator, Object o1, Object o2) {
+  private static void requireNumberOperands (Token operator, Object o1, Object o2) {
     if (o1 instanceof Double && o2 instanceof Double) return;
     throw new RuntimeError(operator, "Operands must be numbers.");
   }
 
-  private String stringify (Object o) {
+  static String stringify (Object o) {
     if (o == null) return "nil";
     var value = o.toString();
     if (o instanceof Double) {
@@ -1,44 +1,40 @@
 package com.benrkia.illi;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import static com.benrkia.illi.TokenType.*;
 
 class Lexer {
-  private final String source;
+  private final CharSequence source;
+  private final Reporter reporter;
   private final List<Token> tokens = new ArrayList<>();
-  private static final Map<String, TokenType> keywords;
-
-  static {
-    keywords = new HashMap<>();
-    keywords.put("and",     AND);
-    keywords.put("class",   CLASS);
-    keywords.put("else",    ELSE);
-    keywords.put("false",   FALSE);
-    keywords.put("fun",     FUN);
-    keywords.put("for",     FOR);
-    keywords.put("if",      IF);
-    keywords.put("nil",     NIL);
-    keywords.put("or",      OR);
-    keywords.put("print",   PRINT);
-    keywords.put("return",  RETURN);
-    keywords.put("super",   SUPER);
-    keywords.put("this",    THIS);
-    keywords.put("true",    TRUE);
-    keywords.put("var",     VAR);
-    keywords.put("while",   WHILE);
-  }
+  private final ConstantPool constants = new ConstantPool();
+  /** integers of up to 15 digits and the powers of 10 up to 10^22 are exact doubles */
+  private static final int EXACT_DIGITS = 15;
+  private static final double[] POWERS_OF_10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+    1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
 
   private int current = 0;
   private int start = 0;
   // TODO: update to support enhanced location for a better error reporting
   private int line = 1;
 
-  public Lexer (String source) {
+  public Lexer (String source, Reporter reporter) {
+    this.source = source;
+    this.reporter = reporter;
+  }
+
+  /**
+   * A lexer resuming at {@code offset}, which has to be the start of a token on {@code line}
+   */
+  Lexer (CharSequence source, Reporter reporter, int offset, int line) {
     this.source = source;
+    this.reporter = reporter;
+    this.current = offset;
+    this.line = line;
   }
 
   public List<Token> scanTokens () {
@@ -51,6 +47,28 @@ class Lexer {
     return List.copyOf(tokens);
   }
 
+  /**
+   * Scans the next token only, {@link #tokenStart()} is then its offset
+   *
+   * @return the token, or null at the end of the source
+   */
+  Token scanNext () {
+    var scanned = tokens.size();
+    while (!isAtEnd() && tokens.size() == scanned) {
+      start = current;
+      scanToken();
+    }
+    return tokens.size() == scanned ? null : tokens.get(scanned);
+  }
+
+  int tokenStart () {
+    return start;
+  }
+
+  int line () {
+    return line;
+  }
+
   private void scanToken () {
     var c = advance();
     switch (c) {
@@ -99,7 +117,7 @@ class Lexer {
         } else if (isAlpha(c)) {
           identifier();
         } else {
-          Illi.error(line, "Unexpected character.");
+          reporter.error(line, "Unexpected character.");
         }
         break;
     }
@@ -110,89 +128,138 @@ class Lexer {
   }
 
   private void addToken (TokenType type, Object literal) {
-    var lexeme = source.substring(start, current);
+    var lexeme = substring(start, current);
     tokens.add(new Token(type, lexeme, literal, line));
   }
 
   private void identifier () {
     while (isAlphaNumeric(peek())) advance();
 
-    var value = source.substring(start, current);
-    var type = keywords.getOrDefault(value, IDENTIFIER);
-    addToken(type);
+    addToken(keyword(substring(start, current)));
+  }
+
+  /**
+   * A switch rather than a map, so there is no table to build when the lexer
+   * is loaded
+   */
+  private static TokenType keyword (String text) {
+    switch (text) {
+      case "and": return AND;
+      case "class": return CLASS;
+      case "else": return ELSE;
+      case "false": return FALSE;
+      case "fun": return FUN;
+      case "for": return FOR;
+      case "if": return IF;
+      case "nil": return NIL;
+      case "or": return OR;
+      case "print": return PRINT;
+      case "return": return RETURN;
+      case "super": return SUPER;
+      case "this": return THIS;
+      case "true": return TRUE;
+      case "var": return VAR;
+      case "while": return WHILE;
+      default: return IDENTIFIER;
+    }
   }
 
+  /**
+   * Parses the digits from the source as it scans them. A number of up to
+   * {@link #EXACT_DIGITS} significant digits is an exact integer divided by an
+   * exact power of 10, which is correctly rounded; longer ones are left to
+   * {@link Double#parseDouble(String)}.
+   */
   private void number () {
-    while (isDigit(peek())) advance();
+    var first = source.charAt(start) - '0';
+    long significand = first;
+    var digits = first == 0 ? 0 : 1;
+    while (isDigit(peek())) {
+      var digit = advance() - '0';
+      if (digits > 0 || digit != 0) {
+        ++digits;
+        if (digits <= EXACT_DIGITS) significand = significand * 10 + digit;
+      }
+    }
 
+    var scale = 0;
     if (peek() == '.' && isDigit(peekNext())) {
       advance();
-      while (isDigit(peek())) advance();
+      while (isDigit(peek())) {
+        var digit = advance() - '0';
+        ++scale;
+        if (digits > 0 || digit != 0) {
+          ++digits;
+          if (digits <= EXACT_DIGITS) significand = significand * 10 + digit;
+        }
+      }
     }
 
-    var value = source.substring(start, current);
-    addToken(NUMBER, Double.parseDouble(value));
+    double value;
+    if (digits <= EXACT_DIGITS && scale < POWERS_OF_10.length) {
+      value = scale == 0 ? significand : significand / POWERS_OF_10[scale];
+    } else {
+      value = Double.parseDouble(substring(start, current));
+    }
+    addToken(NUMBER, constants.number(value));
   }
 
+  /**
+   * Scans the literal once, counting its escapes. A literal without escapes is
+   * its source range as is, the others are decoded in a single pass into a
+   * buffer of their exact length.
+   */
   private void string () {
-    boolean needsEscape = false;
-    while ((needsEscape || peek() != '"') && !isAtEnd()) {
-      if (needsEscape) needsEscape = false;
-      else if (peek() == '\\') needsEscape = true;
+    var escapes = 0;
+    while (peek() != '"' && !isAtEnd()) {
+      if (peek() == '\\' && current + 1 < source.length()) {
+        advance();
+        ++escapes;
+      }
       if (peek() == '\n') ++line;
       advance();
     }
 
     if (isAtEnd()) {
-      Illi.error(line, "Unterminated string.");
+      reporter.error(line, "Unterminated string.");
       return;
     }
     advance();
 
-    var value = escape(source.substring(start + 1, current - 1));
-    addToken(STRING, value);
-  }
-
-  private String escape(String value) {
-    var _bytes = value.getBytes();
-    var needsEscape = false;
-    var escaped = new StringBuilder();
-
-    for (var _byte: _bytes) {
-      if (needsEscape) {
-        switch (_byte) {
-          case 0x22: // \"
-            escaped.append((char) 0x22);
-            break;
-          case 0x62: // \b
-            escaped.append((char) 0x8);
-            break;
-          case 0x66: // \f
-            escaped.append((char) 0xc);
-            break;
-          case 0x6e: // \n
-            escaped.append((char) 0xa);
-            break;
-          case 0x72: // \r
-            escaped.append((char) 0xd);
-            break;
-          case 0x74: // \t
-            escaped.append((char) 0x9);
-            break;
-          case 0x5c: // \\
-            escaped.append((char) 0x5c);
-            break;
-          default:
-            Illi.error(line, "Illegal escape character in string literal.");
-            return null;
-        }
-        needsEscape = false;
+    var from = start + 1;
+    var to = current - 1;
+    var value = escapes == 0 ? substring(from, to) : unescape(from, to, to - from - escapes);
+    addToken(STRING, value == null ? null : constants.string(value));
+  }
+
+  private String unescape (int from, int to, int length) {
+    var chars = new char[length];
+    var i = 0;
+    for (var j = from; j < to; ++j) {
+      var c = source.charAt(j);
+      if (c != '\\') {
+        chars[i++] = c;
+        continue;
+      }
+
+      switch (source.charAt(++j)) {
+        case '"': chars[i++] = '"'; break;
+        case 'b': chars[i++] = '\b'; break;
+        case 'f': chars[i++] = '\f'; break;
+        case 'n': chars[i++] = '\n'; break;
+        case 'r': chars[i++] = '\r'; break;
+        case 't': chars[i++] = '\t'; break;
+        case '\\': chars[i++] = '\\'; break;
+        default:
+          reporter.error(line, "Illegal escape character in string literal.");
+          return null;
       }
-      else if (_byte == 0x5c) needsEscape = true;
-      else escaped.append((char) _byte);
     }
+    return new String(chars);
+  }
 
-    return escaped.toString();
+  private String substring (int from, int to) {
+    return source.subSequence(from, to).toString();
   }
 
   private char peek () {
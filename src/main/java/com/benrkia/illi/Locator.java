@@ -0,0 +1,126 @@
+package com.benrkia.illi;
+
+/**
+ * Finds the token that best locates a node in the source, the same token
+ * runtime errors of that node would be reported at. Literals, slots and empty
+ * blocks carry no token, {@code null} is returned for them.
+ */
+class Locator implements Expr.Visitor<Token>, Stmt.Visitor<Token> {
+  private static final Locator instance = new Locator();
+
+  private Locator() {}
+
+  static Token token (Expr expr) {
+    return expr == null ? null : expr.accept(instance);
+  }
+
+  static Token token (Stmt stmt) {
+    return stmt == null ? null : stmt.accept(instance);
+  }
+
+  /**
+   * @return the line of the node, or 0 when it has no token
+   */
+  static int line (Object node) {
+    var token = node instanceof Expr ? token((Expr) node) : token((Stmt) node);
+    return token == null ? 0 : token.line;
+  }
+
+  @Override
+  public Token visit (Stmt.Expression stmt) {
+    return token(stmt.expr);
+  }
+
+  @Override
+  public Token visit (Stmt.Print stmt) {
+    return token(stmt.expr);
+  }
+
+  @Override
+  public Token visit (Stmt.Var stmt) {
+    return stmt.name;
+  }
+
+  @Override
+  public Token visit (Stmt.Vars stmt) {
+    return stmt.variables.isEmpty() ? null : token(stmt.variables.get(0));
+  }
+
+  @Override
+  public Token visit (Stmt.Block stmt) {
+    for (var statement: stmt.statements) {
+      var token = token(statement);
+      if (token != null) return token;
+    }
+    return null;
+  }
+
+  @Override
+  public Token visit (Expr.Assign expr) {
+    return expr.name;
+  }
+
+  @Override
+  public Token visit (Expr.Comma expr) {
+    var token = token(expr.left);
+    return token != null ? token : token(expr.right);
+  }
+
+  @Override
+  public Token visit (Expr.Conditional expr) {
+    var token = token(expr.expr);
+    if (token != null) return token;
+    token = token(expr.thenBranch);
+    return token != null ? token : token(expr.elseBranch);
+  }
+
+  @Override
+  public Token visit (Expr.Binary expr) {
+    return expr.operator;
+  }
+
+  @Override
+  public Token visit (Expr.Unary expr) {
+    return expr.operator;
+  }
+
+  @Override
+  public Token visit (Expr.Literal expr) {
+    return null;
+  }
+
+  @Override
+  public Token visit (Expr.Grouping expr) {
+    return token(expr.expression);
+  }
+
+  @Override
+  public Token visit (Expr.Variable expr) {
+    return expr.name;
+  }
+
+  @Override
+  public Token visit (Expr.VariableLiteral expr) {
+    return expr.operator;
+  }
+
+  @Override
+  public Token visit (Expr.VariableVariable expr) {
+    return expr.operator;
+  }
+
+  @Override
+  public Token visit (Expr.AssignVariableLiteral expr) {
+    return expr.name;
+  }
+
+  @Override
+  public Token visit (Expr.Let expr) {
+    return token(expr.expr);
+  }
+
+  @Override
+  public Token visit (Expr.Slot expr) {
+    return null;
+  }
+}
@@ -0,0 +1,162 @@
+package com.benrkia.illi;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide interpreter metrics, shared by every session. All the counters
+ * are {@link LongAdder}s so that concurrent sessions don't contend on them, and
+ * the per-node counts are first accumulated by each interpreter in a plain
+ * array then flushed here once per {@link InterpreterImpl#interpret(java.util.List)}.
+ */
+final class Metrics {
+  private Metrics() {}
+
+  // Node types, indexes of InterpreterImpl's evaluation counts
+  static final int EXPRESSION = 0;
+  static final int PRINT = 1;
+  static final int VAR = 2;
+  static final int VARS = 3;
+  static final int BLOCK = 4;
+  static final int ASSIGN = 5;
+  static final int COMMA = 6;
+  static final int CONDITIONAL = 7;
+  static final int BINARY = 8;
+  static final int UNARY = 9;
+  static final int LITERAL = 10;
+  static final int GROUPING = 11;
+  static final int VARIABLE = 12;
+  static final int VARIABLE_LITERAL = 13;
+  static final int VARIABLE_VARIABLE = 14;
+  static final int ASSIGN_VARIABLE_LITERAL = 15;
+  static final int LET = 16;
+  static final int SLOT = 17;
+
+  private static final String[] nodeNames = {
+    "Expression", "Print", "Var", "Vars", "Block",
+    "Assign", "Comma", "Conditional", "Binary", "Unary", "Literal", "Grouping", "Variable",
+    "VariableLiteral", "VariableVariable", "AssignVariableLiteral", "Let", "Slot",
+  };
+  static final int NODES = nodeNames.length;
+
+  // Lookup depth buckets: 0, 1, 2, 4, 8, 16, +Inf
+  private static final int[] depthBounds = { 0, 1, 2, 4, 8, 16 };
+
+  private static final LongAdder[] nodes = adders(NODES);
+  private static final LongAdder environments = new LongAdder();
+  private static final LongAdder[] lookupDepths = adders(depthBounds.length + 1);
+  private static final LongAdder lookupDepthSum = new LongAdder();
+  private static final Map<String, LongAdder> runtimeErrors = new ConcurrentHashMap<>();
+  private static final LongAdder printedBytes = new LongAdder();
+  private static final Pattern quoted = Pattern.compile("'[^']*'");
+  private static final Pattern number = Pattern.compile("[0-9]+");
+
+  private static LongAdder[] adders (int size) {
+    var adders = new LongAdder[size];
+    for (var i = 0; i < size; ++i) adders[i] = new LongAdder();
+    return adders;
+  }
+
+  static void evaluated (long[] counts) {
+    for (var i = 0; i < NODES; ++i) {
+      if (counts[i] != 0) {
+        nodes[i].add(counts[i]);
+        counts[i] = 0;
+      }
+    }
+  }
+
+  static void environmentAllocated () {
+    environments.increment();
+  }
+
+  /**
+   * @param depth number of enclosing environments walked before finding the variable
+   */
+  static void lookup (int depth) {
+    var bucket = 0;
+    while (bucket < depthBounds.length && depth > depthBounds[bucket]) ++bucket;
+    lookupDepths[bucket].increment();
+    lookupDepthSum.add(depth);
+  }
+
+  static void runtimeError (RuntimeError error) {
+    runtimeErrors.computeIfAbsent(template(error.getMessage()), k -> new LongAdder()).increment();
+  }
+
+  /**
+   * @return {@code message} without the names and numbers it quotes, so that
+   * there's one series per kind of error whatever the scripts name their
+   * variables
+   */
+  static String template (String message) {
+    return number.matcher(quoted.matcher(message).replaceAll("'_'")).replaceAll("N");
+  }
+
+  static void printed (String text) {
+    var bytes = 1; // line separator
+    for (var i = 0; i < text.length(); ++i) {
+      var c = text.charAt(i);
+      if (c < 0x80) bytes += 1;
+      else if (c < 0x800) bytes += 2;
+      else if (Character.isSurrogate(c)) bytes += 2; // 4 per pair
+      else bytes += 3;
+    }
+    printedBytes.add(bytes);
+  }
+
+  static void dump (Path path) throws IOException {
+    try (var out = Files.newBufferedWriter(path)) {
+      write(out);
+    }
+  }
+
+  /**
+   * Writes all the metrics in Prometheus text exposition format
+   */
+  static void write (Writer out) throws IOException {
+    header(out, "illi_nodes_evaluated_total", "counter", "AST nodes evaluated, by node type.");
+    for (var i = 0; i < NODES; ++i) {
+      out.write("illi_nodes_evaluated_total{node=\"" + nodeNames[i] + "\"} " + nodes[i].sum() + "\n");
+    }
+
+    header(out, "illi_environments_allocated_total", "counter", "Environments allocated.");
+    out.write("illi_environments_allocated_total " + environments.sum() + "\n");
+
+    header(out, "illi_environment_lookup_depth", "histogram",
+            "Enclosing environments walked by variable lookups and assignments.");
+    long count = 0;
+    for (var i = 0; i < lookupDepths.length; ++i) {
+      count += lookupDepths[i].sum();
+      var bound = i < depthBounds.length ? String.valueOf(depthBounds[i]) : "+Inf";
+      out.write("illi_environment_lookup_depth_bucket{le=\"" + bound + "\"} " + count + "\n");
+    }
+    out.write("illi_environment_lookup_depth_sum " + lookupDepthSum.sum() + "\n");
+    out.write("illi_environment_lookup_depth_count " + count + "\n");
+
+    header(out, "illi_runtime_errors_total", "counter", "Runtime errors, by message with its names and numbers elided.");
+    for (var entry: new TreeMap<>(runtimeErrors).entrySet()) {
+      out.write("illi_runtime_errors_total{message=\"" + escape(entry.getKey()) + "\"} "
+              + entry.getValue().sum() + "\n");
+    }
+
+    header(out, "illi_printed_bytes_total", "counter", "Bytes written by print statements.");
+    out.write("illi_printed_bytes_total " + printedBytes.sum() + "\n");
+  }
+
+  private static void header (Writer out, String name, String type, String help) throws IOException {
+    out.write("# HELP " + name + " " + help + "\n");
+    out.write("# TYPE " + name + " " + type + "\n");
+  }
+
+  private static String escape (String label) {
+    return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
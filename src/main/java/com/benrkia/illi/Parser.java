@@ -6,7 +6,11 @@ import java.util.List;
 import static com.benrkia.illi.TokenType.*;
 
 class Parser {
-  private static class ParseError extends RuntimeException {}
+  private static class ParseError extends RuntimeException {
+    ParseError () {
+      super(null, null, false, false);
+    }
+  }
 
   @FunctionalInterface
   private interface Production {
@@ -14,10 +18,12 @@ class Parser {
   }
 
   private final List<Token> tokens;
+  private final Reporter reporter;
   private int current = 0;
 
-  Parser (List<Token> tokens) {
+  Parser (List<Token> tokens, Reporter reporter) {
     this.tokens = tokens;
+    this.reporter = reporter;
   }
 
   List<Stmt> parse() {
@@ -30,11 +36,25 @@ class Parser {
     return statements;
   }
 
+  /**
+   * Parses the single declaration starting at token {@code start}, {@link #position()}
+   * is then the token following it
+   */
+  Stmt declarationAt (int start) {
+    current = start;
+    return declaration();
+  }
+
+  int position () {
+    return current;
+  }
+
   private Stmt declaration() {
+    var line = peek().line;
     try {
-      if (match(VAR)) return varDeclarations();
-
-      return statement();
+      var stmt = match(VAR) ? varDeclarations() : statement();
+      stmt.line = line;
+      return stmt;
     } catch (ParseError error) {
       synchronize();
       return null;
@@ -49,7 +69,7 @@ class Parser {
       variables.add(varDeclaration());
     }
 
-    consume(SEMICOLON, "';' Expected");
+    endOfStatement("';' Expected");
     return new Stmt.Vars(variables);
   }
 
@@ -73,7 +93,7 @@ class Parser {
 
   private Stmt printStatement() {
     Expr value = expression();
-    consume(SEMICOLON, "Expected ';' after value.");
+    endOfStatement("Expected ';' after value.");
     return new Stmt.Print(value);
   }
 
@@ -90,7 +110,7 @@ class Parser {
 
   private Stmt expressionStatement() {
     Expr expr = expression();
-    consume(SEMICOLON, "Expected ';' after expression.");
+    endOfStatement("Expected ';' after expression.");
     return new Stmt.Expression(expr);
   }
 
@@ -237,6 +257,19 @@ class Parser {
     throw error(peek(), message);
   }
 
+  /**
+   * A statement missing its ';' at the end of a line is reported without
+   * unwinding, the parser carries on with the next line as if it was there.
+   */
+  private void endOfStatement (String message) {
+    if (match(SEMICOLON)) return;
+    if (current > 0 && peek().line > previous().line) {
+      error(previous(), message);
+      return;
+    }
+    throw error(peek(), message);
+  }
+
   private boolean check (TokenType type) {
     if (isAtEnd()) return false;
     return peek().type == type;
@@ -280,7 +313,7 @@ class Parser {
   }
 
   private ParseError error (Token token, String message) {
-    Illi.error(token, message);
+    reporter.error(token, message);
     return new ParseError();
   }
 }
@@ -0,0 +1,155 @@
+package com.benrkia.illi;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records invocation counts, inclusive and self time of every AST node and
+ * source line. Install it with {@link InterpreterImpl#instrument(Instrument)}.
+ * <p>
+ * Since there are no calls in Illi, a node is always reached through the same
+ * ancestors: each node is its own call-tree frame and its stack is found by
+ * following the parents recorded on its first invocation.
+ */
+class Profiler extends Instrument {
+  private static class Frame {
+    final Object node;
+    final Frame parent;
+    final int line;
+    long count;
+    long inclusive;
+    long self;
+
+    Frame(Object node, Frame parent) {
+      this.node = node;
+      this.parent = parent;
+      var line = node instanceof Stmt && ((Stmt) node).line != 0 ? ((Stmt) node).line : Locator.line(node);
+      // literals have no line, they are on the line of their statement
+      this.line = line == 0 && parent != null ? parent.line : line;
+    }
+
+    String label () {
+      return node.getClass().getSimpleName() + ":" + line;
+    }
+  }
+
+  private final Map<Object, Frame> frames = new IdentityHashMap<>();
+  private final List<Frame> order = new ArrayList<>();
+  private Frame[] stack = new Frame[64];
+  private long[] starts = new long[64];
+  private long[] children = new long[64];
+  private int depth = 0;
+
+  @Override
+  Object evaluate (Expr expr) {
+    enter(expr);
+    try {
+      return super.evaluate(expr);
+    } finally {
+      exit();
+    }
+  }
+
+  @Override
+  void execute (Stmt stmt) {
+    enter(stmt);
+    try {
+      super.execute(stmt);
+    } finally {
+      exit();
+    }
+  }
+
+  private void enter (Object node) {
+    var frame = frames.get(node);
+    if (frame == null) {
+      frame = new Frame(node, depth == 0 ? null : stack[depth - 1]);
+      frames.put(node, frame);
+      order.add(frame);
+    }
+
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+      starts = Arrays.copyOf(starts, depth * 2);
+      children = Arrays.copyOf(children, depth * 2);
+    }
+    stack[depth] = frame;
+    children[depth] = 0;
+    starts[depth++] = System.nanoTime();
+  }
+
+  private void exit () {
+    var elapsed = System.nanoTime() - starts[--depth];
+    var frame = stack[depth];
+    stack[depth] = null;
+
+    ++frame.count;
+    frame.inclusive += elapsed;
+    frame.self += elapsed - children[depth];
+    if (depth > 0) children[depth - 1] += elapsed;
+  }
+
+  /**
+   * Writes one {@code frame;frame;frame self-nanos} line per node, the collapsed
+   * stack format read by flame graph tools
+   */
+  void writeCollapsed (Writer out) throws IOException {
+    var path = new StringBuilder();
+    for (var frame: order) {
+      path.setLength(0);
+      for (var f = frame; f != null; f = f.parent) {
+        path.insert(0, f.parent == null ? f.label() : ";" + f.label());
+      }
+      out.write(path.toString());
+      out.write(" " + frame.self + "\n");
+    }
+  }
+
+  void report (PrintStream out) {
+    var lines = new TreeMap<Integer, long[]>();
+    var types = new TreeMap<String, long[]>();
+    for (var frame: order) {
+      var line = lines.computeIfAbsent(frame.line, k -> new long[3]);
+      line[0] += frame.count;
+      line[2] += frame.self;
+      // nested nodes of the same line are already part of the outer one
+      if (frame.parent == null || frame.parent.line != frame.line) line[1] += frame.inclusive;
+
+      var type = types.computeIfAbsent(frame.node.getClass().getSimpleName(), k -> new long[3]);
+      type[0] += frame.count;
+      type[2] += frame.self;
+      if (!isNested(frame)) type[1] += frame.inclusive;
+    }
+
+    out.println("Profile by line:");
+    out.printf("%-22s %12s %14s %14s%n", "line", "count", "inclusive(us)", "self(us)");
+    lines.entrySet().stream()
+            .sorted(Comparator.comparingLong(e -> -e.getValue()[2]))
+            .forEach(e -> print(out, String.valueOf(e.getKey()), e.getValue()));
+
+    out.println("Profile by node:");
+    out.printf("%-22s %12s %14s %14s%n", "node", "count", "inclusive(us)", "self(us)");
+    types.entrySet().stream()
+            .sorted(Comparator.comparingLong(e -> -e.getValue()[2]))
+            .forEach(e -> print(out, e.getKey(), e.getValue()));
+  }
+
+  private boolean isNested (Frame frame) {
+    for (var f = frame.parent; f != null; f = f.parent) {
+      if (f.node.getClass() == frame.node.getClass()) return true;
+    }
+    return false;
+  }
+
+  private void print (PrintStream out, String key, long[] totals) {
+    out.printf("%-22s %12d %14d %14d%n", key, totals[0], totals[1] / 1000, totals[2] / 1000);
+  }
+}
@@ -0,0 +1,78 @@
+package com.benrkia.illi;
+
+import java.io.PrintStream;
+
+/**
+ * Reports the errors of a single run and remembers whether there were any.
+ * Each run gets its own reporter so that concurrent runs don't share state.
+ */
+class Reporter {
+  private final PrintStream err;
+
+  boolean hadError = false;
+  boolean hadRuntimeError = false;
+  int errorCount = 0;
+  /** whether {@link #warning(Token, String)} prints anything */
+  boolean warnings = false;
+
+  Reporter (PrintStream err) {
+    this.err = err;
+  }
+
+  void error (int line, String message) {
+    report(line, null, "", message);
+  }
+
+  void error (Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      report(token.line, "", " at end", message);
+    } else {
+      report(token.line, token.lexeme, " at '" + token.lexeme + "'", message);
+    }
+  }
+
+  /**
+   * Reports something suspicious that doesn't prevent running, when warnings are enabled
+   */
+  void warning (Token token, String message) {
+    if (warnings) err.println("[line " + token.line + "] Warning at '" + token.lexeme + "': " + message);
+  }
+
+  void runtimeError (RuntimeError error) {
+    err.println("[line "+ error.token.line +"] Error at '"+ error.token.lexeme +"'");
+    err.println(error.getMessage());
+    hadRuntimeError = true;
+
+    if (Events.recording()) {
+      var event = new Events.IlliRuntimeError();
+      if (event.shouldCommit()) {
+        event.token = error.token.lexeme;
+        event.line = error.token.line;
+        event.message = error.getMessage();
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * @return the exit status of the run: 65 after a syntax error, 70 after a runtime error
+   */
+  int status () {
+    if (hadError) return 65;
+    if (hadRuntimeError) return 70;
+    return 0;
+  }
+
+  private void report (int line, String lexeme, String where, String message) {
+    hadError = true;
+    ++errorCount;
+    syntaxError(line, lexeme, where, message);
+  }
+
+  /**
+   * Prints a lexer or parser error, {@code lexeme} is null for lexer errors
+   */
+  void syntaxError (int line, String lexeme, String where, String message) {
+    err.println("[line " + line + "] Error" + where + ": " + message);
+  }
+}
@@ -1,10 +1,14 @@
 package com.benrkia.illi;
 
+/**
+ * An error of the script being run. It carries the script's location in its
+ * token, so it doesn't capture the (deep and useless) interpreter stack trace.
+ */
 class RuntimeError extends RuntimeException {
   final Token token;
 
   RuntimeError(Token token, String message) {
-    super(message);
+    super(message, null, false, false);
     this.token = token;
   }
 }
@@ -0,0 +1,132 @@
+package com.benrkia.illi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many sessions fairly over a fixed number of carriers. A session may only
+ * execute while it holds a carrier, and gives it back to the longest waiting
+ * session every {@link #slice} statements. The interpreter being recursive, a
+ * waiting session keeps its (parked) thread, only the carriers run.
+ * <p>
+ * What a session prints is kept in memory while it holds a carrier, and only
+ * written out once it gave the carrier back: a client that doesn't read its
+ * output blocks its own session, never a carrier.
+ */
+class Scheduler {
+  final int slice;
+  private final Semaphore carriers;
+  private final ExecutorService threads = Threads.newThreadPerTaskExecutor();
+
+  Scheduler (int carriers, int slice) {
+    this.carriers = new Semaphore(carriers, true);
+    this.slice = slice;
+  }
+
+  /**
+   * Runs {@code source} in a new session starting with {@code globals}
+   *
+   * @return the exit status of the session, as {@link Reporter#status()}
+   */
+  Future<Integer> submit (String source, Environment globals, Budget.Limits limits, PrintStream out, PrintStream err) {
+    return threads.submit(() -> {
+      var output = new Output();
+      var reporter = new Reporter(output.to(err));
+      var interpreter = new InterpreterImpl(output.to(out), reporter, globals);
+      var budget = new Budget(limits);
+      budget.scheduleWith(this, output);
+      interpreter.instrument(budget);
+
+      carriers.acquireUninterruptibly();
+      budget.resume();
+      try {
+        Illi.run(source, reporter, interpreter);
+      } finally {
+        budget.pause();
+        carriers.release();
+        output.flush();
+      }
+      return reporter.status();
+    });
+  }
+
+  /**
+   * Gives the carrier to the longest waiting session, and writes out what the
+   * session printed meanwhile
+   */
+  void yield (Budget budget, Output output) {
+    if (!carriers.hasQueuedThreads() && output.isEmpty()) return;
+
+    budget.pause();
+    carriers.release();
+    output.flush();
+    carriers.acquireUninterruptibly();
+    budget.resume();
+  }
+
+  void shutdown () {
+    threads.shutdown();
+  }
+
+  /**
+   * The output and errors of a session, in the order they were printed
+   */
+  static class Output {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final List<PrintStream> targets = new ArrayList<>();
+    /** end of the bytes of each target in a row */
+    private final List<Integer> ends = new ArrayList<>();
+
+    PrintStream to (PrintStream target) {
+      return new PrintStream(new OutputStream() {
+        @Override
+        public void write (int b) {
+          write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write (byte[] b, int offset, int length) {
+          append(target, b, offset, length);
+        }
+      }, false, StandardCharsets.UTF_8);
+    }
+
+    private synchronized void append (PrintStream target, byte[] b, int offset, int length) {
+      var last = targets.size() - 1;
+      if (last >= 0 && targets.get(last) == target) {
+        ends.set(last, ends.get(last) + length);
+      } else {
+        targets.add(target);
+        ends.add(bytes.size() + length);
+      }
+      bytes.write(b, offset, length);
+    }
+
+    synchronized boolean isEmpty () {
+      return targets.isEmpty();
+    }
+
+    /**
+     * Writes out everything printed so far, which may block on the client
+     */
+    synchronized void flush () {
+      var buffer = bytes.toByteArray();
+      var start = 0;
+      for (var i = 0; i < targets.size(); ++i) {
+        targets.get(i).write(buffer, start, ends.get(i) - start);
+        targets.get(i).flush();
+        start = ends.get(i);
+      }
+      bytes.reset();
+      targets.clear();
+      ends.clear();
+    }
+  }
+}
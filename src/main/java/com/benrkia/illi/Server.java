@@ -0,0 +1,176 @@
+package com.benrkia.illi;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps a warm JVM resident and runs the scripts sent by {@link Client} over a
+ * Unix domain socket, each request with its own interpreter on its own thread,
+ * scheduled by a {@link Scheduler} within the limits of its {@link Budget}.
+ * <p>
+ * A request is a kind byte followed by a length-prefixed UTF-8 payload:
+ * {@code F} with the path of a script, {@code S} with the source of a script or
+ * {@code M} (empty payload) for the {@link Metrics} of the daemon. The response
+ * is a sequence of {@code O} (stdout) and {@code E} (stderr) frames, each a
+ * length-prefixed chunk of output, ended by an {@code X} frame carrying the
+ * exit status as an int. Payloads longer than {@link #MAX_PAYLOAD} bytes are
+ * answered with the status 64 without being read.
+ */
+class Server {
+  static final byte FILE = 'F';
+  static final byte SOURCE = 'S';
+  static final byte METRICS = 'M';
+  static final byte OUT = 'O';
+  static final byte ERR = 'E';
+  static final byte EXIT = 'X';
+
+  private static final int SLICE = 1_000;
+  /** largest payload accepted, a path or the source of a script */
+  static final int MAX_PAYLOAD = 16 << 20;
+
+  private final Path socket;
+  private final Budget.Limits limits;
+  private final Scheduler scheduler;
+  private final Environment base;
+
+  /**
+   * @param limits the budget of every request, which share the CPUs through a {@link Scheduler}
+   * @param base the globals every request starts with, forked for each of them, or null
+   */
+  Server (Path socket, Budget.Limits limits, Environment base) {
+    this.socket = socket;
+    this.limits = limits;
+    this.base = base;
+    this.scheduler = new Scheduler(Runtime.getRuntime().availableProcessors(), SLICE);
+  }
+
+  void serve () throws IOException {
+    Files.deleteIfExists(socket);
+    var executor = Threads.newThreadPerTaskExecutor();
+    try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      server.bind(UnixDomainSocketAddress.of(socket));
+      for (;;) {
+        var channel = server.accept();
+        executor.execute(() -> handle(channel));
+      }
+    } finally {
+      executor.shutdown();
+      scheduler.shutdown();
+      Files.deleteIfExists(socket);
+    }
+  }
+
+  private void handle (SocketChannel channel) {
+    try (channel) {
+      var in = new DataInputStream(Channels.newInputStream(channel));
+      var out = new DataOutputStream(Channels.newOutputStream(channel));
+
+      var kind = in.readByte();
+      var length = in.readInt();
+
+      var stdout = new PrintStream(new FrameOutputStream(out, OUT), true, StandardCharsets.UTF_8);
+      var stderr = new PrintStream(new FrameOutputStream(out, ERR), true, StandardCharsets.UTF_8);
+      int status;
+      if (length < 0 || length > MAX_PAYLOAD) {
+        stderr.println("Invalid request length " + length + ", at most " + MAX_PAYLOAD + " bytes are accepted");
+        status = 64;
+      } else {
+        var payload = new String(in.readNBytes(length), StandardCharsets.UTF_8);
+        status = run(kind, payload, stdout, stderr);
+      }
+
+      synchronized (out) {
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // the client went away, nothing left to report to
+    }
+  }
+
+  private int run (byte kind, String payload, PrintStream stdout, PrintStream stderr) throws IOException {
+    String source;
+    switch (kind) {
+      case FILE:
+        var path = Paths.get(payload);
+        if (!Files.isReadable(path)) {
+          stdout.println("File not found: " + payload);
+          return 66;
+        }
+        source = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        break;
+      case SOURCE:
+        source = payload;
+        break;
+      case METRICS:
+        var metrics = new StringWriter();
+        Metrics.write(metrics);
+        stdout.print(metrics);
+        return 0;
+      default:
+        stderr.println("Unknown request '" + (char) kind + "'");
+        return 64;
+    }
+
+    try {
+      var globals = base == null ? new Environment() : base.fork();
+      return scheduler.submit(source, globals, limits, stdout, stderr).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 70;
+    } catch (ExecutionException e) {
+      stderr.println("Internal error: " + e.getCause());
+      return 70;
+    }
+  }
+
+  /**
+   * Sends everything written to it as frames of the given kind
+   */
+  private static class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte kind;
+
+    FrameOutputStream (DataOutputStream out, byte kind) {
+      this.out = out;
+      this.kind = kind;
+    }
+
+    @Override
+    public void write (int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write (byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) return;
+      synchronized (out) {
+        out.writeByte(kind);
+        out.writeInt(length);
+        out.write(bytes, offset, length);
+      }
+    }
+
+    @Override
+    public void flush () throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.benrkia.illi;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves the global variables of an interpreter to a compact binary file, and
+ * maps them back in later so that a setup script doesn't have to run again.
+ * <p>
+ * The file is the {@code ILLI} magic, a version byte and the number of
+ * variables, followed by each variable: its name (length-prefixed UTF-8), a
+ * tag byte and the value, a big-endian double for numbers and length-prefixed
+ * UTF-8 for strings. Variables declared but not initialized yet keep their
+ * own tag.
+ */
+final class Snapshot {
+  private Snapshot() {}
+
+  private static final int MAGIC = 0x494c4c49; // ILLI
+  private static final byte VERSION = 1;
+
+  private static final byte NIL = 0;
+  private static final byte FALSE = 1;
+  private static final byte TRUE = 2;
+  private static final byte NUMBER = 3;
+  private static final byte STRING = 4;
+  private static final byte UNINITIALIZED = 5;
+
+  static void write (Environment globals, Path file) throws IOException {
+    var values = globals.bindings();
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeInt(values.size());
+
+      for (var entry: values.entrySet()) {
+        writeString(out, entry.getKey());
+        var value = entry.getValue();
+        if (value == null) {
+          out.writeByte(NIL);
+        } else if (value == Environment.uninitialized) {
+          out.writeByte(UNINITIALIZED);
+        } else if (value instanceof Boolean) {
+          out.writeByte((boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+          out.writeByte(NUMBER);
+          out.writeDouble((double) value);
+        } else if (value instanceof String) {
+          out.writeByte(STRING);
+          writeString(out, (String) value);
+        } else {
+          throw new IllegalStateException("Can't snapshot '" + entry.getKey() + "' of " + value.getClass());
+        }
+      }
+    }
+  }
+
+  static Environment read (Path file) throws IOException {
+    ByteBuffer in;
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    if (in.remaining() < 9 || in.getInt() != MAGIC || in.get() != VERSION) {
+      throw new IOException(file + " is not an Illi snapshot");
+    }
+
+    var globals = new Environment();
+    var values = globals.values();
+    var count = in.getInt();
+    if (count < 0) throw new IOException(file + " is corrupted");
+    for (var i = 0; i < count; ++i) {
+      var name = readString(in, file);
+      Object value;
+      switch (get(in, 1, file).get()) {
+        case NIL: value = null; break;
+        case FALSE: value = false; break;
+        case TRUE: value = true; break;
+        case NUMBER: value = get(in, Double.BYTES, file).getDouble(); break;
+        case STRING: value = readString(in, file); break;
+        case UNINITIALIZED: value = Environment.uninitialized; break;
+        default: throw new IOException(file + " is corrupted");
+      }
+      values.put(name, value);
+    }
+    if (in.hasRemaining()) throw new IOException(file + " is corrupted");
+    return globals;
+  }
+
+  private static void writeString (DataOutputStream out, String value) throws IOException {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString (ByteBuffer in, Path file) throws IOException {
+    var length = get(in, Integer.BYTES, file).getInt();
+    if (length < 0) throw new IOException(file + " is corrupted");
+    get(in, length, file);
+    var bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return {@code in}, once checked that {@code bytes} remain to be read
+   */
+  private static ByteBuffer get (ByteBuffer in, int bytes, Path file) throws IOException {
+    if (in.remaining() < bytes) throw new IOException(file + " is truncated");
+    return in;
+  }
+}
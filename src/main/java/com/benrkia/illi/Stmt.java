@@ -3,6 +3,11 @@ package com.benrkia.illi;
 import java.util.List;
 
 abstract class Stmt {
+  /** dense index given by {@link Coverage}, -1 when the node isn't covered */
+  int index = -1;
+  /** line the statement starts on, 0 when it wasn't parsed from a source */
+  int line = 0;
+
   abstract <R> R accept(Visitor<R> visitor);
 
   interface Visitor<R> {
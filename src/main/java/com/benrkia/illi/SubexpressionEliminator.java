@@ -0,0 +1,450 @@
+package com.benrkia.illi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Evaluates once the subexpressions repeated within a statement, e.g.
+ * {@code (a*b+c) > 0 ? (a*b+c) : -(a*b+c)}: the first occurrence becomes an
+ * {@link Expr.Let} keeping its value in a temporary slot and the others
+ * {@link Expr.Slot}s reading it back.
+ * <p>
+ * Two subtrees are the same when they have the same structure and read the
+ * same variables with no assignment to them in between, which is tracked by
+ * giving each variable a new version on every assignment. Subtrees containing
+ * an assignment are never reused. An occurrence is only reused by the ones it
+ * is always evaluated before: those later in the same branch of a conditional,
+ * or after the conditional when it is outside of the branches. Since the first
+ * occurrence is the one that would fail first, runtime errors are the same as
+ * for the original tree.
+ */
+class SubexpressionEliminator implements Expr.Visitor<Integer>, Stmt.Visitor<Stmt> {
+  private static final int IMPURE = -1;
+
+  // Structures are interned as a tag, an operator and two ids packed in a
+  // long, names and literals as a tag and the hash of their value
+  private static final int NAME = 0;
+  private static final int LITERAL = 1;
+  private static final int VARIABLE = 2;
+  private static final int BINARY = 3;
+  private static final int UNARY = 4;
+  private static final int COMMA = 5;
+  private static final int CONDITIONAL = 6;
+  private static final int BRANCHES = 7;
+  private static final int ID_BITS = 27;
+  private static final int MAX_ID = (1 << ID_BITS) - 1;
+
+  // Everything below is reset for each statement: the environment doesn't
+  // change within a statement, but may between them
+
+  /** open addressing table of the structures to their ids, valid when stamped with the current generation */
+  private long[] keys = new long[64];
+  /** the name or literal of the keys that are hashes */
+  private Object[] values = new Object[64];
+  private int[] ids = new int[64];
+  private int[] stamps = new int[64];
+  private int generation = 0;
+  private int size = 0;
+
+  /** current version of each variable, by name id */
+  private int[] versions = new int[64];
+  private int nextVersion = 0;
+  /** name id and previous version of each assignment, to restore them after a branch */
+  private int[] assignments = new int[32];
+  private int assignmentCount = 0;
+
+  // Nodes are identified by their position in the order they are visited,
+  // which is the same for the analysis and the rewriting
+
+  /** position of the first occurrence of each structure, by id, or -1 when it can't be reused at this point */
+  private int[] firsts = new int[64];
+  /** ids of the first occurrences, to forget them after a branch */
+  private int[] available = new int[64];
+  private int availableCount = 0;
+  private int position = 0;
+  /** position following the last node of the tree of each node */
+  private int[] ends = new int[64];
+  /** 1 + the slot kept by each node, -1 - the slot read instead of it, or 0 */
+  private int[] actions = new int[64];
+  /** position of each reusing occurrence followed by the position of the occurrence it reuses */
+  private int[] reuses = new int[32];
+  private int reuseCount = 0;
+
+  List<Stmt> eliminate (List<Stmt> statements) {
+    var eliminated = new ArrayList<Stmt>(statements.size());
+    for (var stmt: statements) {
+      eliminated.add(eliminate(stmt));
+    }
+    return eliminated;
+  }
+
+  private Stmt eliminate (Stmt stmt) {
+    var eliminated = stmt.accept(this);
+    eliminated.line = stmt.line;
+    return eliminated;
+  }
+
+  private Expr eliminate (Expr expr) {
+    if (expr == null) return null;
+
+    reset();
+    id(expr);
+    if (reuseCount == 0) return expr;
+
+    Arrays.fill(actions, 0, position, 0);
+    var slots = 0;
+    for (var i = 0; i < reuseCount; i += 2) {
+      var first = reuses[i + 1];
+      if (actions[first] == 0) actions[first] = ++slots;
+      actions[reuses[i]] = -actions[first];
+    }
+    position = 0;
+    return new Rewriter().rewrite(expr);
+  }
+
+  private void reset () {
+    ++generation;
+    size = 0;
+    nextVersion = 0;
+    assignmentCount = 0;
+    availableCount = 0;
+    position = 0;
+    reuseCount = 0;
+  }
+
+  @Override
+  public Stmt visit (Stmt.Expression stmt) {
+    var expr = eliminate(stmt.expr);
+    return expr == stmt.expr ? stmt : new Stmt.Expression(expr);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Print stmt) {
+    var expr = eliminate(stmt.expr);
+    return expr == stmt.expr ? stmt : new Stmt.Print(expr);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Var stmt) {
+    var initializer = eliminate(stmt.initializer);
+    return initializer == stmt.initializer ? stmt : new Stmt.Var(stmt.name, initializer);
+  }
+
+  @Override
+  public Stmt visit (Stmt.Vars stmt) {
+    return new Stmt.Vars(eliminate(stmt.variables));
+  }
+
+  @Override
+  public Stmt visit (Stmt.Block stmt) {
+    return new Stmt.Block(eliminate(stmt.statements));
+  }
+
+  /**
+   * Visits {@code expr} in evaluation order, recording the reuses of the
+   * occurrences available so far and making its own available.
+   *
+   * @return the id of the structure of {@code expr}, or {@link #IMPURE}
+   */
+  private int id (Expr expr) {
+    var at = position++;
+    if (at == ends.length) {
+      ends = Arrays.copyOf(ends, at * 2);
+      actions = Arrays.copyOf(actions, at * 2);
+    }
+    var reused = reuseCount;
+    int id = expr.accept(this);
+    ends[at] = position;
+    // literals and variables are already as cheap as a slot, and a grouping is
+    // the same as its expression, which was already visited
+    if (id == IMPURE || expr instanceof Expr.Literal || expr instanceof Expr.Variable
+            || expr instanceof Expr.Grouping) {
+      return id;
+    }
+
+    var first = firsts[id];
+    if (first < 0) {
+      firsts[id] = at;
+      if (availableCount == available.length) available = Arrays.copyOf(available, availableCount * 2);
+      available[availableCount++] = id;
+      return id;
+    }
+
+    // what was reused within this occurrence won't be evaluated anymore
+    reuseCount = reused;
+    if (reuseCount == reuses.length) reuses = Arrays.copyOf(reuses, reuseCount * 2);
+    reuses[reuseCount++] = at;
+    reuses[reuseCount++] = first;
+    return id;
+  }
+
+  /**
+   * @return the id of the structure, the same for the same arguments
+   */
+  private int intern (int tag, int operator, int left, int right) {
+    if (left == IMPURE || right == IMPURE) return IMPURE;
+    return intern((long) tag << 60 | (long) operator << 54 | (long) left << ID_BITS | right, null);
+  }
+
+  private int intern (int tag, Object value) {
+    return intern((long) tag << 60 | (Objects.hashCode(value) & 0xffffffffL), value);
+  }
+
+  private int intern (long key, Object value) {
+    var mask = keys.length - 1;
+    var i = hash(key) & mask;
+    while (stamps[i] == generation) {
+      if (keys[i] == key && (value == null ? values[i] == null : value.equals(values[i]))) return ids[i];
+      i = (i + 1) & mask;
+    }
+    if (size == MAX_ID) return IMPURE;
+
+    keys[i] = key;
+    values[i] = value;
+    ids[i] = size;
+    stamps[i] = generation;
+    if (size == firsts.length) {
+      firsts = Arrays.copyOf(firsts, size * 2);
+      versions = Arrays.copyOf(versions, size * 2);
+    }
+    firsts[size] = -1;
+    versions[size] = 0;
+    var id = size++;
+    if (size > keys.length >>> 1) grow();
+    return id;
+  }
+
+  private void grow () {
+    var oldKeys = keys;
+    var oldValues = values;
+    var oldIds = ids;
+    var oldStamps = stamps;
+    keys = new long[oldKeys.length << 1];
+    values = new Object[oldValues.length << 1];
+    ids = new int[oldIds.length << 1];
+    stamps = new int[oldStamps.length << 1];
+
+    var mask = keys.length - 1;
+    for (var j = 0; j < oldKeys.length; ++j) {
+      if (oldStamps[j] != generation) continue;
+      var i = hash(oldKeys[j]) & mask;
+      while (stamps[i] == generation) i = (i + 1) & mask;
+      keys[i] = oldKeys[j];
+      values[i] = oldValues[j];
+      ids[i] = oldIds[j];
+      stamps[i] = generation;
+    }
+  }
+
+  private static int hash (long key) {
+    var mixed = key * 0x9e3779b97f4a7c15L;
+    return (int) (mixed ^ mixed >>> 32);
+  }
+
+  private int name (Token name) {
+    return intern(NAME, name.lexeme);
+  }
+
+  private int variable (Token name) {
+    var id = name(name);
+    return id == IMPURE || versions[id] > MAX_ID ? IMPURE : intern(VARIABLE, 0, id, versions[id]);
+  }
+
+  private int literal (Object value) {
+    // equals tells a number from a string of the same text
+    return intern(LITERAL, value);
+  }
+
+  private void assigned (int name) {
+    if (name == IMPURE) return;
+    if (assignmentCount + 2 > assignments.length) assignments = Arrays.copyOf(assignments, assignmentCount * 2);
+    assignments[assignmentCount++] = name;
+    assignments[assignmentCount++] = versions[name];
+    versions[name] = ++nextVersion;
+  }
+
+  /**
+   * Restores the versions the variables had before the assignments from
+   * {@code from} on, latest first
+   */
+  private void restore (int from, int to) {
+    for (var i = to - 2; i >= from; i -= 2) versions[assignments[i]] = assignments[i + 1];
+  }
+
+  private void forget (int from) {
+    while (availableCount > from) firsts[available[--availableCount]] = -1;
+  }
+
+  @Override
+  public Integer visit (Expr.Assign expr) {
+    id(expr.value);
+    assigned(name(expr.name));
+    return IMPURE;
+  }
+
+  @Override
+  public Integer visit (Expr.Comma expr) {
+    return intern(COMMA, 0, id(expr.left), id(expr.right));
+  }
+
+  @Override
+  public Integer visit (Expr.Conditional expr) {
+    var condition = id(expr.expr);
+
+    // occurrences within a branch are only available within that branch, and
+    // variables assigned by either branch may hold either value after it
+    var available = availableCount;
+    var assigned = assignmentCount;
+    var thenBranch = id(expr.thenBranch);
+    forget(available);
+    var thenAssigned = assignmentCount;
+    restore(assigned, thenAssigned);
+
+    var elseBranch = id(expr.elseBranch);
+    forget(available);
+    var elseAssigned = assignmentCount;
+    restore(thenAssigned, elseAssigned);
+
+    for (var i = assigned; i < elseAssigned; i += 2) assigned(assignments[i]);
+    return intern(CONDITIONAL, 0, condition, intern(BRANCHES, 0, thenBranch, elseBranch));
+  }
+
+  @Override
+  public Integer visit (Expr.Binary expr) {
+    return intern(BINARY, expr.operator.type.ordinal(), id(expr.left), id(expr.right));
+  }
+
+  @Override
+  public Integer visit (Expr.Unary expr) {
+    return intern(UNARY, expr.operator.type.ordinal(), id(expr.right), 0);
+  }
+
+  @Override
+  public Integer visit (Expr.Literal expr) {
+    return literal(expr.value);
+  }
+
+  @Override
+  public Integer visit (Expr.Grouping expr) {
+    return id(expr.expression);
+  }
+
+  @Override
+  public Integer visit (Expr.Variable expr) {
+    return variable(expr.name);
+  }
+
+  @Override
+  public Integer visit (Expr.VariableLiteral expr) {
+    return intern(BINARY, expr.operator.type.ordinal(), variable(expr.name), literal(expr.value));
+  }
+
+  @Override
+  public Integer visit (Expr.VariableVariable expr) {
+    return intern(BINARY, expr.operator.type.ordinal(), variable(expr.left), variable(expr.right));
+  }
+
+  @Override
+  public Integer visit (Expr.AssignVariableLiteral expr) {
+    assigned(name(expr.name));
+    return IMPURE;
+  }
+
+  @Override
+  public Integer visit (Expr.Let expr) {
+    id(expr.expr);
+    return IMPURE;
+  }
+
+  @Override
+  public Integer visit (Expr.Slot expr) {
+    return IMPURE;
+  }
+
+  /**
+   * Rebuilds an expression with its reused occurrences kept in slots and the
+   * reusing ones read from them, following the {@link #actions} recorded for
+   * the positions of its nodes
+   */
+  private class Rewriter implements Expr.Visitor<Expr> {
+
+    Expr rewrite (Expr expr) {
+      var at = position++;
+      var action = actions[at];
+      if (action < 0) {
+        position = ends[at];
+        return new Expr.Slot(-1 - action);
+      }
+
+      var rewritten = expr.accept(this);
+      return action == 0 ? rewritten : new Expr.Let(action - 1, rewritten);
+    }
+
+    @Override
+    public Expr visit (Expr.Assign expr) {
+      return new Expr.Assign(expr.name, rewrite(expr.value));
+    }
+
+    @Override
+    public Expr visit (Expr.Comma expr) {
+      return new Expr.Comma(rewrite(expr.left), rewrite(expr.right));
+    }
+
+    @Override
+    public Expr visit (Expr.Conditional expr) {
+      return new Expr.Conditional(rewrite(expr.expr), rewrite(expr.thenBranch), rewrite(expr.elseBranch));
+    }
+
+    @Override
+    public Expr visit (Expr.Binary expr) {
+      return new Expr.Binary(rewrite(expr.left), expr.operator, rewrite(expr.right));
+    }
+
+    @Override
+    public Expr visit (Expr.Unary expr) {
+      return new Expr.Unary(expr.operator, rewrite(expr.right));
+    }
+
+    @Override
+    public Expr visit (Expr.Literal expr) {
+      return expr;
+    }
+
+    @Override
+    public Expr visit (Expr.Grouping expr) {
+      return new Expr.Grouping(rewrite(expr.expression));
+    }
+
+    @Override
+    public Expr visit (Expr.Variable expr) {
+      return expr;
+    }
+
+    @Override
+    public Expr visit (Expr.VariableLiteral expr) {
+      return expr;
+    }
+
+    @Override
+    public Expr visit (Expr.VariableVariable expr) {
+      return expr;
+    }
+
+    @Override
+    public Expr visit (Expr.AssignVariableLiteral expr) {
+      return expr;
+    }
+
+    @Override
+    public Expr visit (Expr.Let expr) {
+      return new Expr.Let(expr.slot, rewrite(expr.expr));
+    }
+
+    @Override
+    public Expr visit (Expr.Slot expr) {
+      return expr;
+    }
+  }
+}
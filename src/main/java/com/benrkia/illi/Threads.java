@@ -0,0 +1,21 @@
+package com.benrkia.illi;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+final class Threads {
+  private Threads() {}
+
+  /**
+   * One virtual thread per task when the runtime has them (JDK 21+),
+   * otherwise a platform thread per task, reused between tasks
+   */
+  static ExecutorService newThreadPerTaskExecutor () {
+    try {
+      var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
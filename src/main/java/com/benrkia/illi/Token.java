@@ -4,7 +4,8 @@ class Token {
   final TokenType type;
   final String lexeme;
   final Object literal;
-  final int line;
+  /** line the token ends on, which {@link Document} moves in place as lines are edited above it */
+  int line;
 
 
   public Token (TokenType type, String lexeme, Object literal, int line) {
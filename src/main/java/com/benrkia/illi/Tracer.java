@@ -0,0 +1,144 @@
+package com.benrkia.illi;
+
+import java.io.PrintStream;
+
+/**
+ * Records the last executed statements and evaluated expressions with their
+ * values in a ring buffer preallocated as arrays, so tracing allocates nothing.
+ * The trace is dumped when a runtime error reaches the top-level statement, or
+ * on demand with {@link #dump(PrintStream)}, possibly from another thread. Install it with
+ * {@link InterpreterImpl#instrument(Instrument)}; without it the interpreter
+ * doesn't pay for tracing.
+ * <p>
+ * Statements are recorded before they execute and expressions once evaluated,
+ * so an expression that fails is recorded as such after its operands.
+ */
+class Tracer extends Instrument {
+  /**
+   * The operation {@link Illi} registers as an MBean to dump the trace on
+   * demand, public for JMX to call it
+   */
+  public interface Dump {
+    void dump ();
+  }
+
+  private static final byte STATEMENT = 0;
+  private static final byte NIL = 1;
+  private static final byte FALSE = 2;
+  private static final byte TRUE = 3;
+  private static final byte NUMBER = 4;
+  private static final byte STRING = 5;
+  private static final byte FAILED = 6;
+
+  private final PrintStream err;
+  private final int mask;
+  private final Object[] nodes;
+  private final byte[] tags;
+  private final long[] numbers;
+  private final String[] strings;
+  private long count = 0;
+  private int depth = 0;
+
+  /**
+   * @param capacity entries kept, rounded up to a power of two
+   */
+  Tracer (int capacity, PrintStream err) {
+    var size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+    this.err = err;
+    this.mask = size - 1;
+    this.nodes = new Object[size];
+    this.tags = new byte[size];
+    this.numbers = new long[size];
+    this.strings = new String[size];
+  }
+
+  @Override
+  Object evaluate (Expr expr) {
+    Object value;
+    try {
+      value = super.evaluate(expr);
+    } catch (RuntimeError error) {
+      record(expr, FAILED, 0, null);
+      throw error;
+    }
+
+    if (value == null) record(expr, NIL, 0, null);
+    else if (value instanceof Double) record(expr, NUMBER, Double.doubleToRawLongBits((double) value), null);
+    else if (value instanceof Boolean) record(expr, (boolean) value ? TRUE : FALSE, 0, null);
+    else record(expr, STRING, 0, (String) value);
+    return value;
+  }
+
+  @Override
+  void execute (Stmt stmt) {
+    record(stmt, STATEMENT, 0, null);
+    ++depth;
+    try {
+      super.execute(stmt);
+    } catch (RuntimeError error) {
+      if (depth == 1) dump(err);
+      throw error;
+    } finally {
+      --depth;
+    }
+  }
+
+  private void record (Object node, byte tag, long number, String string) {
+    synchronized (this) {
+      var i = (int) (count++ & mask);
+      nodes[i] = node;
+      tags[i] = tag;
+      numbers[i] = number;
+      strings[i] = string;
+    }
+  }
+
+  /**
+   * Prints the recorded entries, oldest first. They are copied under the lock
+   * of the ring, so that the interpreter only waits for the copy when another
+   * thread dumps the trace while it runs.
+   */
+  void dump (PrintStream out) {
+    long count;
+    int kept;
+    Object[] nodes;
+    byte[] tags;
+    long[] numbers;
+    String[] strings;
+    synchronized (this) {
+      count = this.count;
+      kept = (int) Math.min(count, mask + 1);
+      nodes = new Object[kept];
+      tags = new byte[kept];
+      numbers = new long[kept];
+      strings = new String[kept];
+      for (var n = 0; n < kept; ++n) {
+        var i = (int) ((count - kept + n) & mask);
+        nodes[n] = this.nodes[i];
+        tags[n] = this.tags[i];
+        numbers[n] = this.numbers[i];
+        strings[n] = this.strings[i];
+      }
+    }
+
+    out.println("Last " + kept + " of " + count + " traced nodes:");
+    var statementLine = 0;
+    for (var i = 0; i < kept; ++i) {
+      var node = nodes[i];
+      var line = node instanceof Stmt && ((Stmt) node).line != 0 ? ((Stmt) node).line : Locator.line(node);
+      // literals have no line, they are on the line of their statement
+      if (tags[i] == STATEMENT) statementLine = line;
+      else if (line == 0) line = statementLine;
+      var entry = "  [line " + line + "] " + node.getClass().getSimpleName();
+      switch (tags[i]) {
+        case NIL: entry += " = nil"; break;
+        case FALSE: entry += " = false"; break;
+        case TRUE: entry += " = true"; break;
+        case NUMBER: entry += " = " + InterpreterImpl.stringify(Double.longBitsToDouble(numbers[i])); break;
+        case STRING: entry += " = \"" + strings[i] + "\""; break;
+        case FAILED: entry += " failed"; break;
+      }
+      out.println(entry);
+    }
+  }
+}
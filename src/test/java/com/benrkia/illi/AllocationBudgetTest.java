@@ -0,0 +1,133 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fails when a phase allocates more per unit of work than the budget checked in
+ * {@code allocation-budgets.properties}. Each measure is the smallest of a few
+ * runs once warmed up, so that it reflects the compiled code.
+ */
+class AllocationBudgetTest {
+  private static final int WARMUP = 200;
+  private static final int RUNS = 20;
+  private static final int STATEMENTS = 2_000;
+  private static final int OPERATORS = 500;
+  private static final int ROWS = 10_000;
+
+  private static final com.sun.management.ThreadMXBean threads =
+          (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+  private static final Properties budgets = new Properties();
+
+  @BeforeAll
+  static void loadBudgets () throws IOException {
+    try (var in = AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+      budgets.load(in);
+    }
+  }
+
+  @Test
+  void lexer () {
+    var source = script();
+    var tokens = Scripts.lex(source).size();
+    var bytes = allocated(() -> Scripts.lex(source));
+    assertWithinBudget("lexer.bytes.per.token", (double) bytes / tokens);
+  }
+
+  @Test
+  void parser () {
+    var tokens = Scripts.lex(script());
+    var bytes = allocated(() -> Scripts.parse(tokens));
+    assertWithinBudget("parser.bytes.per.token", (double) bytes / tokens.size());
+  }
+
+  @Test
+  void interpreter () {
+    var statements = new Fuser().fuse(Scripts.parse(script()));
+    var bytes = allocated(() -> interpret(statements));
+    assertWithinBudget("interpreter.bytes.per.statement", (double) bytes / statements.size());
+  }
+
+  @Test
+  void numericBinary () {
+    var source = new StringBuilder("1");
+    for (var i = 0; i < OPERATORS; ++i) source.append(i % 2 == 0 ? " + 2" : " * 1");
+    var statements = Scripts.parse(source.append(";").toString());
+
+    var bytes = allocated(() -> interpret(statements));
+    assertWithinBudget("interpreter.bytes.per.numeric.binary", (double) bytes / OPERATORS);
+  }
+
+  @Test
+  void numericBinaryOverColumns () {
+    var statements = Scripts.parse("x * 2 + y * x - y / 4;");
+    var expr = ((Stmt.Expression) statements.get(0)).expr;
+    var x = new double[ROWS];
+    var y = new double[ROWS];
+    for (var row = 0; row < ROWS; ++row) {
+      x[row] = row;
+      y[row] = ROWS - row;
+    }
+    Map<String, Object> columns = Map.of("x", x, "y", y);
+    assertTrue(ColumnEvaluator.evaluate(expr, columns, ROWS).errors.isEmpty());
+
+    var binaries = 5;
+    var bytes = allocated(() -> ColumnEvaluator.evaluate(expr, columns, ROWS));
+    assertWithinBudget("columns.bytes.per.row.per.binary", (double) bytes / ROWS / binaries);
+  }
+
+  /**
+   * Declarations, arithmetic, string concatenation, conditionals, blocks and prints
+   */
+  private static String script () {
+    var source = new StringBuilder();
+    for (var i = 0; i < STATEMENTS / 8; ++i) {
+      source.append("var a").append(i).append(" = ").append(i).append(".5, s").append(i).append(" = \"item\";\n")
+              .append("a").append(i).append(" = a").append(i).append(" * 2 + 1;\n")
+              .append("s").append(i).append(" = s").append(i).append(" + a").append(i).append(";\n")
+              .append("{\n")
+              .append("  var b = a").append(i).append(" > 10 ? a").append(i).append(" - 10 : -a").append(i).append(";\n")
+              .append("  print b / 2;\n")
+              .append("}\n")
+              .append("print s").append(i).append(";\n");
+    }
+    return source.toString();
+  }
+
+  private static void interpret (List<Stmt> statements) {
+    var reporter = new Reporter(System.err);
+    new InterpreterImpl(discard, reporter).interpret(statements);
+    assertEquals(0, reporter.status());
+  }
+
+  private static long allocated (Runnable work) {
+    for (var i = 0; i < WARMUP; ++i) work.run();
+
+    var thread = Thread.currentThread().getId();
+    var least = Long.MAX_VALUE;
+    for (var i = 0; i < RUNS; ++i) {
+      var before = threads.getThreadAllocatedBytes(thread);
+      work.run();
+      least = Math.min(least, threads.getThreadAllocatedBytes(thread) - before);
+    }
+    return least;
+  }
+
+  private static void assertWithinBudget (String name, double measured) {
+    var budget = Double.parseDouble(budgets.getProperty(name));
+    assertTrue(measured <= budget,
+            String.format("%s: %.2f bytes allocated, over the budget of %.2f", name, measured, budget));
+  }
+}
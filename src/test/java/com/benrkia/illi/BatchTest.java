@@ -0,0 +1,43 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void reportsTheOutputOfEveryScript () throws IOException {
+    Files.writeString(directory.resolve("a.ily"), "print 1 + 2;\nprint \"a\";\n");
+    Files.writeString(directory.resolve("b.ily"), "print \"b\";\nprint -\"b\";\nprint \"never\";\n");
+    Files.writeString(directory.resolve("c.ily"), "var c = 1;\n");
+
+    var bytes = new ByteArrayOutputStream();
+    var status = new Batch().run(List.of(directory.toString()), new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+    assertEquals(70, status);
+    var report = bytes.toString(StandardCharsets.UTF_8).lines()
+            .map(line -> line.replaceFirst("^(\\S+) +[0-9.]+  ", "$1 "))
+            .reduce("", (all, line) -> all + line + "\n");
+    assertEquals("STATUS   TIME(ms)  FILE\n"
+            + "ok " + directory.resolve("a.ily") + "\n"
+            + "       | 3\n"
+            + "       | a\n"
+            + "70 " + directory.resolve("b.ily") + "\n"
+            + "       | b\n"
+            + "         [line 2] Error at '-'\n"
+            + "         Operand must be a number\n"
+            + "ok " + directory.resolve("c.ily") + "\n", report.substring(0, report.lastIndexOf("3 scripts")));
+  }
+}
@@ -0,0 +1,179 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks every row of {@link ColumnEvaluator#evaluate} against the interpreter
+ * printing the same expression, its variables declared with the values of that
+ * row: the same value, or the same error at the same token.
+ */
+class ColumnEvaluatorTest {
+  private static final int EXPRESSIONS = 1_000;
+  private static final int ROWS = 6;
+
+  private final Map<String, Object> columns = new LinkedHashMap<>();
+
+  ColumnEvaluatorTest () {
+    columns.put("x", new double[] {1, 2, 3, -4, 0.5, 0});
+    columns.put("y", new double[] {1, 0, 2, 0, -0.25, 3});
+    columns.put("s", new String[] {"a", null, "c", "", null, "b"});
+    columns.put("b", new boolean[] {true, false, true, false, false, true});
+  }
+
+  @Test
+  void failsOnlyTheRowsDividedByZero () {
+    var errors = assertLikeInterpreted("x / y");
+    assertEquals(List.of(1, 3), rows(errors));
+    assertEquals("Arithmetic division by 0", errors.get(0).error.getMessage());
+  }
+
+  @Test
+  void reportsTheFirstErrorOfEachRow () {
+    // rows 1 and 3 fail on the division, the others on the string that follows
+    var errors = assertLikeInterpreted("x / y + -s");
+    assertEquals(List.of(0, 1, 2, 3, 4, 5), rows(errors));
+    for (var error: errors) {
+      var division = error.row == 1 || error.row == 3;
+      assertEquals(division ? "Arithmetic division by 0" : "Operand must be a number", error.error.getMessage());
+    }
+  }
+
+  @Test
+  void evaluatesBranchesForTheRowsThatTakeThem () {
+    assertEquals(List.of(), rows(assertLikeInterpreted("y == 0 ? x : x / y")));
+    assertEquals(List.of(1, 3), rows(assertLikeInterpreted("y == 0 ? x / y : x")));
+    assertEquals(List.of(1, 3, 4), rows(assertLikeInterpreted("b ? x + 1 : -s")));
+    assertLikeInterpreted("b ? s : x > 1 ? x : nil");
+    assertLikeInterpreted("(b ? x : y) * 2 + (b ? y : x)");
+  }
+
+  @Test
+  void failsOnUndefinedVariablesOfTheBranchesTaken () {
+    assertEquals(List.of(), rows(assertLikeInterpreted("x > 100 ? missing : x")));
+    assertEquals(List.of(1, 2), rows(assertLikeInterpreted("x > 1 ? missing : x")));
+    assertEquals(List.of(0, 1, 2, 3, 4, 5), rows(assertLikeInterpreted("missing + x")));
+  }
+
+  @Test
+  void mixesStringsNilsAndBooleans () {
+    assertLikeInterpreted("s + x");
+    assertLikeInterpreted("s == nil");
+    assertLikeInterpreted("s != \"a\"");
+    assertLikeInterpreted("s > \"b\"");
+    assertLikeInterpreted("!b");
+    assertLikeInterpreted("b == true");
+    assertLikeInterpreted("!s");
+    assertLikeInterpreted("-b");
+    assertLikeInterpreted("s ? s : \"none\"");
+    assertLikeInterpreted("(s, b, x)");
+    assertLikeInterpreted("x == y");
+  }
+
+  @Test
+  void rejectsAssignments () {
+    var expr = expression("x = 1");
+    assertThrows(IllegalArgumentException.class, () -> ColumnEvaluator.evaluate(expr, columns, ROWS));
+  }
+
+  @Test
+  void evaluatesLikeInterpreted () {
+    var random = new Random(3);
+    for (var i = 0; i < EXPRESSIONS; ++i) assertLikeInterpreted(expr(random, 4));
+  }
+
+  /**
+   * Compares the column of {@code source}, as parsed, fused and with its
+   * subexpressions eliminated, with each row interpreted
+   *
+   * @return the errors of the rows
+   */
+  private List<ColumnEvaluator.RowError> assertLikeInterpreted (String source) {
+    var expected = new ArrayList<String>();
+    for (var row = 0; row < ROWS; ++row) expected.add(Scripts.run(declarations(row) + "print " + source + ";"));
+
+    var expr = expression(source);
+    List<ColumnEvaluator.RowError> errors = null;
+    for (var pass: List.of(expr, fused(expr), eliminated(expr))) {
+      var result = ColumnEvaluator.evaluate(pass, columns, ROWS);
+      var actual = new ArrayList<String>();
+      var error = 0;
+      for (var row = 0; row < ROWS; ++row) {
+        if (error < result.errors.size() && result.errors.get(error).row == row) {
+          var failure = result.errors.get(error++).error;
+          actual.add("[line 1] Error at '" + failure.token.lexeme + "'\n" + failure.getMessage() + "\n");
+        } else {
+          actual.add(InterpreterImpl.stringify(Array.get(result.values, row)) + "\n");
+        }
+      }
+      assertEquals(expected, actual, source);
+      errors = result.errors;
+    }
+    return errors;
+  }
+
+  private String declarations (int row) {
+    var declarations = new StringBuilder("var ");
+    columns.forEach((name, column) -> {
+      var value = Array.get(column, row);
+      declarations.append(name).append(" = ")
+              .append(value instanceof String ? "\"" + value + "\"" : InterpreterImpl.stringify(value))
+              .append(", ");
+    });
+    declarations.setLength(declarations.length() - 2);
+    return declarations.append("; ").toString();
+  }
+
+  private static Expr expression (String source) {
+    return ((Stmt.Expression) Scripts.parse(source + ";").get(0)).expr;
+  }
+
+  private static Expr fused (Expr expr) {
+    return ((Stmt.Expression) new Fuser().fuse(List.of(new Stmt.Expression(expr))).get(0)).expr;
+  }
+
+  private static Expr eliminated (Expr expr) {
+    var statements = new SubexpressionEliminator().eliminate(List.of(new Stmt.Expression(expr)));
+    return ((Stmt.Expression) statements.get(0)).expr;
+  }
+
+  private static List<Integer> rows (List<ColumnEvaluator.RowError> errors) {
+    var rows = new ArrayList<Integer>();
+    for (var error: errors) rows.add(error.row);
+    return rows;
+  }
+
+  private static String expr (Random random, int depth) {
+    if (depth == 0 || random.nextInt(4) == 0) {
+      switch (random.nextInt(8)) {
+        case 0: return String.valueOf(random.nextInt(3));
+        case 1: return "\"b\"";
+        case 2: return random.nextBoolean() ? "true" : "nil";
+        case 3: return "s";
+        case 4: return "b";
+        case 5: return "y";
+        default: return "x";
+      }
+    }
+
+    switch (random.nextInt(10)) {
+      case 0: return "(" + expr(random, depth - 1) + " ? " + expr(random, depth - 1) + " : " + expr(random, depth - 1) + ")";
+      case 1: return (random.nextBoolean() ? "-" : "!") + expr(random, depth - 1);
+      case 2: return "(" + expr(random, depth - 1) + ", " + expr(random, depth - 1) + ")";
+      case 3: return "(" + expr(random, depth - 1) + (random.nextBoolean() ? " == " : " != ") + expr(random, depth - 1) + ")";
+      default: {
+        var operator = new String[] {"+", "-", "*", "/", ">", ">=", "<", "<="}[random.nextInt(8)];
+        return "(" + expr(random, depth - 1) + " " + operator + " " + expr(random, depth - 1) + ")";
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConstantPoolTest {
+  private static final int INTEGERS = 100_000;
+
+  @Test
+  void sharesIntegerLiterals () {
+    var pool = new ConstantPool();
+    var numbers = new Double[INTEGERS];
+    for (var i = 0; i < INTEGERS; ++i) numbers[i] = pool.number(i);
+
+    for (var i = 0; i < INTEGERS; ++i) {
+      assertEquals(i, numbers[i]);
+      assertSame(numbers[i], pool.number(i));
+    }
+  }
+
+  @Test
+  void spreadsIntegerLiterals () {
+    // integer valued doubles only differ in their high bits, which must still reach the slot
+    var slots = new HashSet<Integer>();
+    var mask = 4096 - 1;
+    for (var i = 0; i < 2000; ++i) slots.add(ConstantPool.hash(Double.doubleToRawLongBits(i)) & mask);
+    assertTrue(slots.size() > 1000, slots.size() + " distinct slots for 2000 integers");
+  }
+
+  @Test
+  void tellsZerosApart () {
+    var pool = new ConstantPool();
+    assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(pool.number(-0.0)));
+    assertEquals(Double.doubleToRawLongBits(0.0), Double.doubleToRawLongBits(pool.number(0.0)));
+  }
+}
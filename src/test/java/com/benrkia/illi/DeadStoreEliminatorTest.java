@@ -0,0 +1,188 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the output and the errors of programs run through {@link Illi#run}
+ * with what they print when interpreted as parsed. Random programs mix
+ * declarations, assignments inside expressions, conditionals and blocks over a
+ * few variables, most of them run to the end and the others end in runtime
+ * errors, which must be raised at the same point.
+ */
+class DeadStoreEliminatorTest {
+  private static final int PROGRAMS = 3_000;
+  private static final String[] NAMES = {"a", "b", "c", "d", "e"};
+
+  @Test
+  void removesUnusedDeclarations () {
+    var source = "var unused = 5;\nvar x = 1;\nx = 2;\nprint x;\n";
+    assertEquals("[line 1] Warning at 'unused': Variable 'unused' is never read\n"
+            + "[line 2] Warning at 'x': Value assigned to 'x' is never read\n"
+            + "2\n", optimized(source, false, true));
+  }
+
+  @Test
+  void keepsGlobalsThatOutliveTheSource () {
+    assertEquals("", optimized("var unused = 5;\n", true, true));
+  }
+
+  @Test
+  void keepsErrorsOfUnusedValues () {
+    var source = "var unused = -\"a\";\nprint 1;\n";
+    assertEquals(plain(source, List.of()), optimized(source, false, false));
+  }
+
+  @Test
+  void keepsRedeclarationErrors () {
+    var source = "var x = 1;\nvar x = 2;\n";
+    assertEquals(plain(source, List.of()), optimized(source, false, false));
+  }
+
+  @Test
+  void runsAsParsedWhenGlobalsAreDropped () {
+    var random = new Random(7);
+    for (var i = 0; i < PROGRAMS; ++i) {
+      var source = new Program(random).generate();
+      assertEquals(plain(source, List.of()), optimized(source, false, false), source);
+    }
+  }
+
+  @Test
+  void runsAsParsedWhenGlobalsOutliveTheSource () {
+    var random = new Random(11);
+    for (var i = 0; i < PROGRAMS; ++i) {
+      var program = new Program(random);
+      var source = program.generate();
+      // like the prompt, read every global the program declared afterwards
+      var after = new StringBuilder();
+      for (var name: program.globals) after.append("print ").append(name).append(";\n");
+      assertEquals(plain(source, List.of(after.toString())), optimized(source, after.toString()), source);
+    }
+  }
+
+  private static String plain (String source, List<String> after) {
+    var console = new Scripts.Console();
+    var interpreter = console.interpreter();
+    var sources = new ArrayList<String>();
+    sources.add(source);
+    sources.addAll(after);
+    for (var each: sources) {
+      var statements = console.parse(each);
+      if (!console.reporter.hadError) interpreter.interpret(statements);
+    }
+    return console.toString();
+  }
+
+  private static String optimized (String source, boolean globalsLive, boolean warnings) {
+    var console = new Scripts.Console();
+    console.reporter.warnings = warnings;
+    Illi.run(source, console.reporter, console.interpreter(), globalsLive);
+    return console.toString();
+  }
+
+  private static String optimized (String source, String after) {
+    var console = new Scripts.Console();
+    var interpreter = console.interpreter();
+    Illi.run(source, console.reporter, interpreter, true);
+    Illi.run(after, console.reporter, interpreter, true);
+    return console.toString();
+  }
+
+  /**
+   * A random program over the variables {@link #NAMES}, declared first
+   */
+  private static class Program {
+    private final Random random;
+    private final StringBuilder source = new StringBuilder("var a = 1, b = 2, c = 3, d = 4, e = 5;\n");
+    final List<String> globals = new ArrayList<>(List.of(NAMES));
+
+    Program (Random random) {
+      this.random = random;
+    }
+
+    String generate () {
+      statements(0, 3 + random.nextInt(8));
+      return source.toString();
+    }
+
+    private void statements (int depth, int count) {
+      for (var i = 0; i < count; ++i) {
+        switch (random.nextInt(depth > 2 ? 6 : 7)) {
+          case 0: case 1:
+            declarations(depth, i);
+            break;
+          case 2:
+            source.append(name()).append(" = ").append(expr(2)).append(";\n");
+            break;
+          case 3:
+            source.append("print ").append(expr(2)).append(";\n");
+            break;
+          case 4:
+            source.append(expr(2)).append(";\n");
+            break;
+          case 5:
+            source.append("print ").append(name()).append(";\n");
+            break;
+          default:
+            source.append("{\n");
+            statements(depth + 1, 1 + random.nextInt(5));
+            source.append("}\n");
+        }
+      }
+    }
+
+    private void declarations (int depth, int i) {
+      if (depth == 0) {
+        // globals can't be redeclared, give each its own name
+        source.append("var g").append(i).append(" = ").append(expr(2)).append(";\n");
+        globals.add("g" + i);
+        return;
+      }
+
+      source.append("var ");
+      var count = 1 + random.nextInt(2);
+      for (var j = 0; j < count; ++j) {
+        if (j > 0) source.append(", ");
+        source.append(name());
+        if (random.nextInt(8) != 0) source.append(" = ").append(expr(2));
+      }
+      source.append(";\n");
+    }
+
+    private String expr (int depth) {
+      if (depth == 0 || random.nextInt(4) == 0) {
+        switch (random.nextInt(12)) {
+          case 0: return random.nextInt(10) == 0 ? "nil" : "1";
+          case 1: return "2";
+          case 2: case 3: case 4: return String.valueOf(random.nextInt(3));
+          default: return name();
+        }
+      }
+
+      switch (random.nextInt(8)) {
+        case 0: case 1:
+          return "(" + name() + " = " + expr(depth - 1) + ")";
+        case 2:
+          return "((" + expr(depth - 1) + " < " + expr(depth - 1) + ") ? " + expr(depth - 1) + " : " + expr(depth - 1) + ")";
+        case 3:
+          return "-" + expr(depth - 1);
+        case 4:
+          return "(" + expr(depth - 1) + ", " + expr(depth - 1) + ")";
+        case 5:
+          return "((" + expr(depth - 1) + " == " + expr(depth - 1) + ") ? 1 : 0)";
+        default:
+          return "(" + expr(depth - 1) + " " + "+-*+-".charAt(random.nextInt(5)) + " " + expr(depth - 1) + ")";
+      }
+    }
+
+    private String name () {
+      return NAMES[random.nextInt(NAMES.length)];
+    }
+  }
+}
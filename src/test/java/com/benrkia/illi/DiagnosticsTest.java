@@ -0,0 +1,104 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DiagnosticsTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void collectsLexerAndParserErrors () {
+    var source = "print (1;\nprint @ 2;\nvar = 3;\nprint \"open";
+    assertEquals(List.of(
+            "1 ';' Expect ')' after expression.",
+            "2 null Unexpected character.",
+            "3 '=' Expect variable name.",
+            "4 null Unterminated string.",
+            "4 '' Expect expression."), describe(Diagnostics.check(source)));
+  }
+
+  @Test
+  void carriesOnAfterAMissingSemicolon () {
+    var source = "var a = 1\nprint a\n{\n  var b = a + 1\n  print b\n}\nprint a + ;\nprint a\n";
+    // one error per line, the following lines parse as if the ';' was there
+    assertEquals(List.of(
+            "1 '1' ';' Expected",
+            "2 'a' Expected ';' after value.",
+            "4 '1' ';' Expected",
+            "5 'b' Expected ';' after value.",
+            "7 ';' Expect expression.",
+            "8 'a' Expected ';' after value."), describe(Diagnostics.check(source)));
+
+    var console = new Scripts.Console();
+    var statements = console.parse(source);
+    // all but the print missing its operand
+    assertEquals(4, statements.stream().filter(Objects::nonNull).count());
+    assertEquals("[line 1] Error at '1': ';' Expected\n"
+            + "[line 2] Error at 'a': Expected ';' after value.\n"
+            + "[line 4] Error at '1': ';' Expected\n"
+            + "[line 5] Error at 'b': Expected ';' after value.\n"
+            + "[line 7] Error at ';': Expect expression.\n"
+            + "[line 8] Error at 'a': Expected ';' after value.\n", console.toString());
+    assertEquals(65, console.reporter.status());
+  }
+
+  @Test
+  void stopsAtAMissingSemicolonWithinALine () {
+    assertEquals(List.of("1 'print' Expected ';' after value."), describe(Diagnostics.check("print 1 print 2;\nprint 3;")));
+  }
+
+  @Test
+  void exitsWith65WhenAFileHasErrors () throws IOException {
+    Files.writeString(directory.resolve("a.ily"), "print 1;\n");
+    Files.writeString(directory.resolve("b.ily"), "print 1\nprint (2;\n");
+    Files.writeString(directory.resolve("c.ily"), "var c = 1;\nprint c;\n");
+
+    var bytes = new ByteArrayOutputStream();
+    var status = Diagnostics.check(List.of(directory.toString()), new PrintStream(bytes, true, StandardCharsets.UTF_8));
+    assertEquals(65, status);
+    assertEquals(directory.resolve("b.ily") + ": [line 1] Error at '1': Expected ';' after value.\n"
+            + directory.resolve("b.ily") + ": [line 2] Error at ';': Expect ')' after expression.\n"
+            + "3 files checked, 1 with errors\n", bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void exitsWith0WhenEveryFileParses () throws IOException {
+    Files.writeString(directory.resolve("a.ily"), "print 1;\n");
+    Files.writeString(directory.resolve("b.ily"), "print -\"runtime errors aren't checked\";\n");
+
+    var bytes = new ByteArrayOutputStream();
+    var status = Diagnostics.check(List.of(directory.toString()), new PrintStream(bytes, true, StandardCharsets.UTF_8));
+    assertEquals(0, status);
+    assertEquals("2 files checked, 0 with errors\n", bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void exitsWith65WhenAFileCannotBeRead () throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    var missing = directory.resolve("missing.ily").toString();
+    var status = Diagnostics.check(List.of(missing), new PrintStream(bytes, true, StandardCharsets.UTF_8));
+    assertEquals(65, status);
+  }
+
+  private static List<String> describe (List<Diagnostics.Diagnostic> diagnostics) {
+    var descriptions = new ArrayList<String>();
+    for (var diagnostic: diagnostics) {
+      var lexeme = diagnostic.lexeme == null ? "null" : "'" + diagnostic.lexeme + "'";
+      descriptions.add(diagnostic.line + " " + lexeme + " " + diagnostic.message);
+    }
+    return descriptions;
+  }
+}
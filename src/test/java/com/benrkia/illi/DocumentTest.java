@@ -0,0 +1,104 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Applies random edits to a {@link Document} and compares its tokens and
+ * declarations, lines included, with lexing and parsing the edited source from
+ * scratch. Most edits are near the previous one, as when typing, the others
+ * anywhere in the source, and the document is only read every few edits so
+ * that lines are moved by several edits at once.
+ */
+class DocumentTest {
+  private static final int EDITS = 3_000;
+  private static final String[] SNIPPETS = {
+    "\n", "\n\n", " ", "{", "}", "\"", "\"a\nb\"", ";", "var x = 1;", "print x + 2;\n",
+    "// note\n", "x", "1", "=", "(", ")", "? 1 : 2", ", y"
+  };
+  private static final Reporter silent = new Reporter(new PrintStream(OutputStream.nullOutputStream()));
+
+  @Test
+  void editsLikeAFullParse () throws IllegalAccessException {
+    var random = new Random(42);
+    var document = new Document(program(random, 40), silent);
+    var offset = 0;
+    for (var i = 0; i < EDITS; ++i) {
+      var length = document.source().length();
+      offset = random.nextInt(4) == 0 ? random.nextInt(length + 1)
+              : Math.max(0, Math.min(length, offset + random.nextInt(11) - 5));
+      var removed = random.nextInt(3) == 0 ? random.nextInt(Math.min(8, length - offset) + 1) : 0;
+      var inserted = random.nextInt(5) == 0 ? "" : SNIPPETS[random.nextInt(SNIPPETS.length)];
+      document.edit(offset, removed, inserted);
+      offset += inserted.length();
+
+      if (random.nextInt(3) == 0) assertParsedFromScratch(document);
+    }
+    assertParsedFromScratch(document);
+  }
+
+  @Test
+  void movesLinesPastANewline () throws IllegalAccessException {
+    var document = new Document("var a = 1;\n{\n  var b = a;\n}\nprint a;\n", silent);
+    document.edit(0, 0, "\n\n");
+    document.edit(2, 0, "\n");
+    assertEquals(4, document.statements().get(0).line);
+    assertEquals(6, ((Stmt.Block) document.statements().get(1)).statements.get(0).line);
+    assertParsedFromScratch(document);
+  }
+
+  private static void assertParsedFromScratch (Document document) throws IllegalAccessException {
+    var source = document.source();
+    var tokens = new Lexer(source, silent).scanTokens();
+    var statements = new Parser(tokens, silent).parse();
+
+    assertEquals(describe(tokens), describe(document.tokens()), source);
+    assertEquals(describe(statements), describe(document.statements()), source);
+  }
+
+  /**
+   * @return the nodes of {@code node} and their fields, with the type, lexeme and line of their tokens
+   */
+  private static String describe (Object node) throws IllegalAccessException {
+    if (node instanceof Token) {
+      var token = (Token) node;
+      return token.type + " '" + token.lexeme + "' " + token.line;
+    }
+    if (node instanceof List) {
+      var description = new StringBuilder("[");
+      for (var element: (List<?>) node) description.append(describe(element)).append("\n");
+      return description.append("]").toString();
+    }
+    if (!(node instanceof Stmt || node instanceof Expr)) return String.valueOf(node);
+
+    var description = new StringBuilder(node.getClass().getSimpleName());
+    if (node instanceof Stmt) description.append(" line ").append(((Stmt) node).line);
+    description.append("(");
+    for (var field: node.getClass().getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers())) continue;
+      field.setAccessible(true);
+      description.append(field.getName()).append(": ").append(describe(field.get(node))).append(", ");
+    }
+    return description.append(")").toString();
+  }
+
+  private static String program (Random random, int declarations) {
+    var source = new StringBuilder();
+    for (var i = 0; i < declarations; ++i) {
+      switch (random.nextInt(4)) {
+        case 0: source.append("var v").append(i).append(" = ").append(i).append(";\n"); break;
+        case 1: source.append("print \"line\nbreak\" + v").append(i / 2).append(";\n"); break;
+        case 2: source.append("{\n  var b = ").append(i).append(";\n  print b;\n}\n"); break;
+        default: source.append("v").append(i / 2).append(" = v").append(i / 3).append(" * 2;\n");
+      }
+    }
+    return source.toString();
+  }
+}
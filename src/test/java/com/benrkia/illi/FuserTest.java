@@ -0,0 +1,67 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the nodes {@link Fuser} makes fail like the ones they replace:
+ * same message, on the same token of the same line.
+ */
+class FuserTest {
+
+  @Test
+  void failsOnUninitializedVariables () {
+    assertFailsLikeUnfused("var x;\nprint x + 1;", Expr.VariableLiteral.class,
+            "[line 2] Error at 'x'\nVariable 'x' might not have been initialized\n");
+    assertFailsLikeUnfused("var x = 1, y;\nprint x * y;", Expr.VariableVariable.class,
+            "[line 2] Error at 'y'\nVariable 'y' might not have been initialized\n");
+    assertFailsLikeUnfused("var x, y;\ny = x - 1;", Expr.AssignVariableLiteral.class,
+            "[line 2] Error at 'x'\nVariable 'x' might not have been initialized\n");
+  }
+
+  @Test
+  void failsOnUndefinedVariables () {
+    assertFailsLikeUnfused("print x + 1;", Expr.VariableLiteral.class,
+            "[line 1] Error at 'x'\nUndefined variable 'x'.\n");
+    assertFailsLikeUnfused("var x = 1;\nprint x * y;", Expr.VariableVariable.class,
+            "[line 2] Error at 'y'\nUndefined variable 'y'.\n");
+    assertFailsLikeUnfused("var x = 1;\ny = x - 1;", Expr.AssignVariableLiteral.class,
+            "[line 2] Error at 'y'\nUndefined variable 'y'.\n");
+  }
+
+  @Test
+  void failsOnOperandsOfTheWrongType () {
+    assertFailsLikeUnfused("var x = \"a\";\nprint x * 2;", Expr.VariableLiteral.class,
+            "[line 2] Error at '*'\nOperands must be numbers.\n");
+    assertFailsLikeUnfused("var x = true, y = 1;\nprint x + y;", Expr.VariableVariable.class,
+            "[line 2] Error at '+'\nOperands must be two numbers or at least one of them is string.\n");
+    assertFailsLikeUnfused("var x = 1, y;\ny = x < \"a\";", Expr.AssignVariableLiteral.class,
+            "[line 2] Error at '<'\nOperands must be two numbers or two strings.\n");
+  }
+
+  @Test
+  void failsOnDivisionsByZero () {
+    assertFailsLikeUnfused("var x = 1;\nprint x / 0;", Expr.VariableLiteral.class,
+            "[line 2] Error at '/'\nArithmetic division by 0\n");
+    assertFailsLikeUnfused("var x = 1, y = 0;\nprint x / y;", Expr.VariableVariable.class,
+            "[line 2] Error at '/'\nArithmetic division by 0\n");
+    assertFailsLikeUnfused("var x = 1;\nx = x / 0;", Expr.AssignVariableLiteral.class,
+            "[line 2] Error at '/'\nArithmetic division by 0\n");
+  }
+
+  /**
+   * @param source whose last statement is fused into a {@code fused} node
+   */
+  private static void assertFailsLikeUnfused (String source, Class<? extends Expr> fused, String error) {
+    var statements = new Fuser().fuse(Scripts.parse(source));
+    var last = statements.get(statements.size() - 1);
+    var expr = last instanceof Stmt.Print ? ((Stmt.Print) last).expr : ((Stmt.Expression) last).expr;
+    assertTrue(fused.isInstance(expr), source);
+
+    var unfused = Scripts.run(source);
+    assertEquals(error, unfused, source);
+    assertEquals(unfused, Scripts.run(source, new Fuser()::fuse), source);
+  }
+}
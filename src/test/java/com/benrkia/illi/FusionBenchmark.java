@@ -0,0 +1,60 @@
+package com.benrkia.illi;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Measures every fused pattern against its unfused tree, run with:
+ * <pre>
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes com.benrkia.illi.FusionBenchmark
+ * </pre>
+ */
+class FusionBenchmark {
+  private static final int STATEMENTS = 10_000;
+  private static final int WARMUP = 200;
+  private static final int ROUNDS = 500;
+
+  public static void main (String[] args) {
+    var patterns = new LinkedHashMap<String, String>();
+    patterns.put("Variable op Literal", "x * 2;");
+    patterns.put("Variable op Variable", "x * y;");
+    patterns.put("Assign(Variable, Binary(Variable, Literal))", "x = x + 1;");
+    patterns.put("Literal-condition Conditional", "true ? x : y;");
+
+    System.out.printf("%-46s %12s %12s %8s%n", "pattern", "plain ns/op", "fused ns/op", "speedup");
+    patterns.forEach((name, statement) -> {
+      var plain = parse(program(statement));
+      var fused = new Fuser().fuse(plain);
+
+      var plainNs = measure(plain);
+      var fusedNs = measure(fused);
+      System.out.printf("%-46s %12.2f %12.2f %7.2fx%n", name, plainNs, fusedNs, plainNs / fusedNs);
+    });
+  }
+
+  private static String program (String statement) {
+    var source = new StringBuilder("var x = 1, y = 2;\n");
+    for (var i = 0; i < STATEMENTS; ++i) {
+      source.append(statement).append('\n');
+    }
+    return source.toString();
+  }
+
+  private static List<Stmt> parse (String source) {
+    var reporter = new Reporter(System.err);
+    return new Parser(new Lexer(source, reporter).scanTokens(), reporter).parse();
+  }
+
+  private static double measure (List<Stmt> statements) {
+    for (var i = 0; i < WARMUP; ++i) {
+      new InterpreterImpl(System.out, new Reporter(System.err)).interpret(statements);
+    }
+
+    var start = System.nanoTime();
+    for (var i = 0; i < ROUNDS; ++i) {
+      new InterpreterImpl(System.out, new Reporter(System.err)).interpret(statements);
+    }
+    return (double) (System.nanoTime() - start) / ROUNDS / STATEMENTS;
+  }
+}
@@ -0,0 +1,34 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MetricsTest {
+  @Test
+  void countsRuntimeErrorsByTemplate () throws IOException {
+    for (var i = 0; i < 1_000; ++i) Scripts.run("print undefined" + i + ";");
+    Scripts.run("var x;\nprint x + 1;");
+
+    var metrics = new StringWriter();
+    Metrics.write(metrics);
+    var series = metrics.toString().lines()
+            .filter(line -> line.startsWith("illi_runtime_errors_total{"))
+            .filter(line -> line.contains("Undefined variable"))
+            .count();
+    assertEquals(1, series, metrics.toString());
+    assertFalse(metrics.toString().contains("undefined1"), metrics.toString());
+    assertFalse(metrics.toString().contains("'x'"), metrics.toString());
+  }
+
+  @Test
+  void elidesNamesAndNumbers () {
+    assertEquals("Undefined variable '_'.", Metrics.template("Undefined variable 'count'."));
+    assertEquals("Step budget of N statements exceeded.", Metrics.template("Step budget of 1000 statements exceeded."));
+    assertEquals("Operands must be numbers.", Metrics.template("Operands must be numbers."));
+  }
+}
@@ -0,0 +1,63 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfilerTest {
+  private static final String SOURCE = "print \"a\";\n"
+          + "var x = 1;\n"
+          + "\n"
+          + "print x + 2;\n"
+          + "{\n"
+          + "  print \"b\";\n"
+          + "}\n"
+          + "x = x * 3;\n";
+
+  @Test
+  void attributesNodesToTheLineOfTheirStatement () {
+    var bytes = new ByteArrayOutputStream();
+    profile().report(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+
+    var report = bytes.toString(StandardCharsets.UTF_8);
+    var counts = new TreeMap<Integer, Long>();
+    var byLine = report.substring(report.indexOf("Profile by line:"), report.indexOf("Profile by node:"));
+    byLine.lines().skip(2).forEach(row -> {
+      var columns = row.trim().split(" +");
+      counts.put(Integer.parseInt(columns[0]), Long.parseLong(columns[1]));
+    });
+    // print and its literal, the declarations and their literal, print, binary,
+    // variable and literal, the block, print and its literal, then the assignment
+    assertEquals(Map.of(1, 2L, 2, 3L, 4, 4L, 5, 1L, 6, 2L, 8, 5L), counts, report);
+  }
+
+  @Test
+  void labelsFramesWithTheirLine () throws IOException {
+    var collapsed = new StringWriter();
+    profile().writeCollapsed(collapsed);
+    var stacks = collapsed.toString();
+    assertTrue(stacks.contains("Print:1;Literal:1 "), stacks);
+    assertTrue(stacks.contains("Block:5;Print:6;Literal:6 "), stacks);
+    assertFalse(stacks.contains(":0"), stacks);
+  }
+
+  private static Profiler profile () {
+    var console = new Scripts.Console();
+    var profiler = new Profiler();
+    var interpreter = console.interpreter();
+    interpreter.instrument(profiler);
+    interpreter.interpret(Scripts.parse(SOURCE));
+    assertEquals("a\n3\nb\n", console.toString());
+    return profiler;
+  }
+}
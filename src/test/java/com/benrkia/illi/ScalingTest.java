@@ -0,0 +1,172 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs each phase over {@link Workload}s doubling along one dimension and fits
+ * the exponent of the growth, the slope of time against size on a log-log
+ * scale. Exponents above {@link #LINEAR} are flagged as super-linear in the
+ * report, and a test fails when one goes over the exponent expected for it.
+ * <p>
+ * Two are expected to be quadratic: reading a global from nested blocks walks
+ * every environment above, and appending to a string copies it. These tests
+ * take a while, run them with {@code mvn test -P scaling}.
+ */
+@Tag("scaling")
+class ScalingTest {
+  private static final int STEPS = 5;
+  private static final int RUNS = 5;
+  private static final long BATCH = 10_000_000;
+  private static final double LINEAR = 1.25;
+  private static final double TOLERANCE = 0.35;
+  private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+  @Test
+  void variables () throws InterruptedException {
+    scale("variables", 2_000, 1, 1, 1);
+  }
+
+  @Test
+  void depth () throws InterruptedException {
+    scale("depth", 400, 1, 1, 2);
+  }
+
+  @Test
+  void expressionLength () throws InterruptedException {
+    scale("expressionLength", 500, 1, 1, 1);
+  }
+
+  @Test
+  void concatLength () throws InterruptedException {
+    scale("concatLength", 500, 1, 1, 2);
+  }
+
+  @Test
+  void prints () throws InterruptedException {
+    scale("prints", 2_000, 1, 1, 1);
+  }
+
+  /**
+   * @param expected the exponents expected for lexing, parsing and interpreting
+   */
+  private static void scale (String dimension, int base, double... expected) throws InterruptedException {
+    var sizes = new double[STEPS];
+    var times = new double[3][STEPS];
+    var failure = new AssertionError[1];
+    // the generated expressions and blocks are as deep as they are long
+    var thread = new Thread(null, () -> {
+      try {
+        run(dimension, base, sizes, times);
+      } catch (AssertionError error) {
+        failure[0] = error;
+      }
+    }, dimension, 1L << 30);
+    thread.start();
+    thread.join();
+    if (failure[0] != null) throw failure[0];
+
+    var phases = List.of("lex", "parse", "interpret");
+    for (var phase = 0; phase < 3; ++phase) {
+      var exponent = slope(sizes, times[phase]);
+      System.out.printf("%-18s %-10s n=%d..%d  %8.2f ms -> %8.2f ms  exponent %.2f%s%n",
+              dimension, phases.get(phase), (int) sizes[0], (int) sizes[STEPS - 1],
+              times[phase][0] / 1e6, times[phase][STEPS - 1] / 1e6, exponent,
+              exponent > LINEAR ? "  SUPER-LINEAR" : "");
+      assertTrue(exponent <= expected[phase] + TOLERANCE, String.format(
+              "%s %s grows as n^%.2f, expected at most n^%.1f", phases.get(phase), dimension, exponent, expected[phase]));
+    }
+  }
+
+  private static void run (String dimension, int base, double[] sizes, double[][] times) {
+    var sources = new String[STEPS];
+    for (var step = 0; step < STEPS; ++step) {
+      sizes[step] = base << step;
+      sources[step] = workload(dimension, base << step).generate();
+      measure(sources[step]); // warm-up
+    }
+
+    for (var step = 0; step < STEPS; ++step) {
+      var measured = measure(sources[step]);
+      for (var phase = 0; phase < 3; ++phase) times[phase][step] = measured[phase];
+    }
+  }
+
+  private static Workload workload (String dimension, int size) {
+    var workload = new Workload();
+    switch (dimension) {
+      case "variables": workload.variables = size; break;
+      case "depth": workload.depth = size; break;
+      case "expressionLength": workload.expressionLength = size; break;
+      case "concatLength": workload.concatLength = size; break;
+      case "prints": workload.prints = size; break;
+      default: throw new IllegalArgumentException(dimension);
+    }
+    return workload;
+  }
+
+  /**
+   * @return the least nanoseconds taken to lex, parse and interpret {@code source}
+   */
+  private static double[] measure (String source) {
+    var reporter = new Reporter(System.err);
+    var tokens = new Lexer(source, reporter).scanTokens();
+    var statements = new Parser(tokens, reporter).parse();
+    var least = new double[] {
+      least(() -> new Lexer(source, reporter).scanTokens()),
+      least(() -> new Parser(tokens, reporter).parse()),
+      least(() -> new InterpreterImpl(discard, reporter).interpret(statements)),
+    };
+    assertEquals(0, reporter.status());
+    return least;
+  }
+
+  /**
+   * Runs {@code phase} in batches of at least {@link #BATCH} nanoseconds, so
+   * that phases of a fraction of a millisecond aren't lost in the noise of the
+   * timer and the scheduler
+   *
+   * @return the least nanoseconds a run took on average in a batch
+   */
+  private static double least (Runnable phase) {
+    var repeats = 1;
+    long elapsed;
+    while ((elapsed = time(phase, repeats)) < BATCH) repeats *= 2;
+
+    var least = (double) elapsed / repeats;
+    for (var run = 1; run < RUNS; ++run) least = Math.min(least, (double) time(phase, repeats) / repeats);
+    return least;
+  }
+
+  private static long time (Runnable phase, int repeats) {
+    var start = System.nanoTime();
+    for (var i = 0; i < repeats; ++i) phase.run();
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Least squares slope of {@code log(times)} against {@code log(sizes)}
+   */
+  private static double slope (double[] sizes, double[] times) {
+    double meanX = 0, meanY = 0;
+    for (var i = 0; i < sizes.length; ++i) {
+      meanX += Math.log(sizes[i]) / sizes.length;
+      meanY += Math.log(times[i]) / sizes.length;
+    }
+
+    double covariance = 0, variance = 0;
+    for (var i = 0; i < sizes.length; ++i) {
+      var x = Math.log(sizes[i]) - meanX;
+      covariance += x * (Math.log(times[i]) - meanY);
+      variance += x * x;
+    }
+    return covariance / variance;
+  }
+}
@@ -0,0 +1,75 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchedulerTest {
+  private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+  @Test
+  void keepsRunningWhileAClientDoesNotRead () throws Exception {
+    var scheduler = new Scheduler(1, 10);
+    var writing = new CountDownLatch(1);
+    var reading = new CountDownLatch(1);
+    var stalled = new PrintStream(new OutputStream() {
+      @Override
+      public void write (int b) {
+        writing.countDown();
+        try {
+          reading.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, true, StandardCharsets.UTF_8);
+
+    try {
+      var blocked = scheduler.submit(source(100), new Environment(), new Budget.Limits(), stalled, discard);
+      assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+      // the only carrier must be free for the others
+      var bytes = new ByteArrayOutputStream();
+      var out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+      var other = scheduler.submit(source(100), new Environment(), new Budget.Limits(), out, discard);
+      assertEquals(0, other.get(5, TimeUnit.SECONDS));
+      assertEquals(source(100).replace("print ", "").replace(";", ""), bytes.toString(StandardCharsets.UTF_8));
+
+      reading.countDown();
+      assertEquals(0, blocked.get(5, TimeUnit.SECONDS));
+    } finally {
+      reading.countDown();
+      scheduler.shutdown();
+    }
+  }
+
+  @Test
+  void keepsOutputAndErrorsInOrder () throws Exception {
+    var scheduler = new Scheduler(1, 10);
+    var bytes = new ByteArrayOutputStream();
+    var out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    var err = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    try {
+      var status = scheduler.submit(source(25) + "print -\"a\";\n", new Environment(), new Budget.Limits(), out, err);
+      assertEquals(70, status.get(5, TimeUnit.SECONDS));
+    } finally {
+      scheduler.shutdown();
+    }
+    assertEquals(source(25).replace("print ", "").replace(";", "")
+            + "[line 26] Error at '-'\nOperand must be a number\n", bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  private static String source (int prints) {
+    var source = new StringBuilder();
+    for (var i = 0; i < prints; ++i) source.append("print ").append(i).append(";\n");
+    return source.toString();
+  }
+}
@@ -0,0 +1,80 @@
+package com.benrkia.illi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Lexes, parses and runs sources for the tests
+ */
+final class Scripts {
+  private Scripts() {}
+
+  /**
+   * @return the tokens of {@code source}, which must lex without errors
+   */
+  static List<Token> lex (String source) {
+    var reporter = new Reporter(System.err);
+    var tokens = new Lexer(source, reporter).scanTokens();
+    assertEquals(0, reporter.status());
+    return tokens;
+  }
+
+  /**
+   * @return the statements of {@code tokens}, which must parse without errors
+   */
+  static List<Stmt> parse (List<Token> tokens) {
+    var reporter = new Reporter(System.err);
+    var statements = new Parser(tokens, reporter).parse();
+    assertEquals(0, reporter.status());
+    return statements;
+  }
+
+  static List<Stmt> parse (String source) {
+    return parse(lex(source));
+  }
+
+  /**
+   * @return what {@code source} prints, errors included
+   */
+  static String run (String source) {
+    return run(source, statements -> statements);
+  }
+
+  /**
+   * @return what {@code source} prints once its statements went through {@code pass}, errors included
+   */
+  static String run (String source, UnaryOperator<List<Stmt>> pass) {
+    var console = new Console();
+    var statements = console.parse(source);
+    if (!console.reporter.hadError) console.interpreter().interpret(pass.apply(statements));
+    return console.toString();
+  }
+
+  /**
+   * Collects the output and the errors of the sources run on it, in the order
+   * they were printed
+   */
+  static final class Console {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final PrintStream out = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    final Reporter reporter = new Reporter(out);
+
+    List<Stmt> parse (String source) {
+      return new Parser(new Lexer(source, reporter).scanTokens(), reporter).parse();
+    }
+
+    InterpreterImpl interpreter () {
+      return new InterpreterImpl(out, reporter);
+    }
+
+    @Override
+    public String toString () {
+      return bytes.toString(StandardCharsets.UTF_8);
+    }
+  }
+}
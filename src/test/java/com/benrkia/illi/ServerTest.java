@@ -0,0 +1,105 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerTest {
+  @TempDir
+  static Path directory;
+  private static Path socket;
+
+  @BeforeAll
+  static void serve () throws InterruptedException {
+    socket = directory.resolve("illi.sock");
+    var server = new Server(socket, new Budget.Limits(), null);
+    var thread = new Thread(() -> {
+      try {
+        server.serve();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, "server");
+    thread.setDaemon(true);
+    thread.start();
+    // the socket file exists once bound, a little before the server listens
+    for (;;) {
+      try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+        channel.connect(UnixDomainSocketAddress.of(socket));
+        return;
+      } catch (IOException e) {
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  @Test
+  void runsSources () throws IOException {
+    var response = send(Server.SOURCE, "print 1 + 2;\nprint -\"a\";\n".getBytes(StandardCharsets.UTF_8));
+    assertEquals("3\n", response.out);
+    assertEquals("[line 2] Error at '-'\nOperand must be a number\n", response.err);
+    assertEquals(70, response.status);
+  }
+
+  @Test
+  void rejectsNegativeLengths () throws IOException {
+    var response = send(Server.SOURCE, -1, new byte[0]);
+    assertEquals(64, response.status);
+    assertTrue(response.err.startsWith("Invalid request length -1"), response.err);
+  }
+
+  @Test
+  void rejectsLengthsOverTheCap () throws IOException {
+    var response = send(Server.SOURCE, Integer.MAX_VALUE, new byte[0]);
+    assertEquals(64, response.status);
+    assertTrue(response.err.startsWith("Invalid request length " + Integer.MAX_VALUE), response.err);
+  }
+
+  private static class Response {
+    String out = "";
+    String err = "";
+    int status;
+  }
+
+  private static Response send (byte kind, byte[] payload) throws IOException {
+    return send(kind, payload.length, payload);
+  }
+
+  private static Response send (byte kind, int length, byte[] payload) throws IOException {
+    try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+      channel.connect(UnixDomainSocketAddress.of(socket));
+      var out = new DataOutputStream(Channels.newOutputStream(channel));
+      var in = new DataInputStream(Channels.newInputStream(channel));
+      out.writeByte(kind);
+      out.writeInt(length);
+      out.write(payload);
+      out.flush();
+
+      var response = new Response();
+      for (;;) {
+        var frame = in.readByte();
+        if (frame == Server.EXIT) {
+          response.status = in.readInt();
+          return response;
+        }
+        var chunk = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+        if (frame == Server.ERR) response.err += chunk;
+        else response.out += chunk;
+      }
+    }
+  }
+}
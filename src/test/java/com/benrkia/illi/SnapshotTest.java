@@ -0,0 +1,73 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void readsWhatItWrote () throws IOException {
+    var file = snapshot("var n = 1.5, s = \"\u00e9\", t = true, f = false, z = nil, u;");
+    var console = new Scripts.Console();
+    var statements = Scripts.parse("print n; print s; print t; print f; print z; u = 2; print u;");
+    new InterpreterImpl(console.out, console.reporter, Snapshot.read(file)).interpret(statements);
+    assertEquals("1.5\n\u00e9\ntrue\nfalse\nnil\n2\n", console.toString());
+  }
+
+  @Test
+  void rejectsTruncatedFiles () throws IOException {
+    var file = snapshot("var n = 1.5, s = \"string\", t = true;");
+    var bytes = Files.readAllBytes(file);
+    for (var length = 0; length < bytes.length; ++length) {
+      Files.write(file, Arrays.copyOf(bytes, length));
+      var error = assertThrows(IOException.class, () -> Snapshot.read(file), "length " + length);
+      assertTrue(error.getMessage().startsWith(file.toString()), error.getMessage());
+    }
+  }
+
+  @Test
+  void rejectsCorruptedLengths () throws IOException {
+    var file = snapshot("var s = \"string\";");
+    var bytes = Files.readAllBytes(file);
+    // the count of variables, then the length of the first name
+    for (var at: new int[] {5, 9}) {
+      for (var length: new int[] {-1, Integer.MAX_VALUE}) {
+        var corrupted = bytes.clone();
+        ByteBuffer.wrap(corrupted).putInt(at, length);
+        Files.write(file, corrupted);
+        assertThrows(IOException.class, () -> Snapshot.read(file), at + ": " + length);
+      }
+    }
+  }
+
+  @Test
+  void rejectsTrailingBytes () throws IOException {
+    var file = snapshot("var n = 1;");
+    var bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length + 1));
+    assertThrows(IOException.class, () -> Snapshot.read(file));
+  }
+
+  private Path snapshot (String source) throws IOException {
+    var reporter = new Reporter(System.err);
+    var impl = new InterpreterImpl(System.out, reporter);
+    impl.interpret(Scripts.parse(source));
+    assertEquals(0, reporter.status());
+
+    var file = directory.resolve("globals.snapshot");
+    Snapshot.write(impl.globals(), file);
+    return file;
+  }
+}
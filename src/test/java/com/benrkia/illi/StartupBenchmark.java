@@ -0,0 +1,86 @@
+package com.benrkia.illi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the time from launching a JVM to the first line a hello world
+ * script prints, with and without the class data sharing archive, run with:
+ * <pre>
+ *   mvn package
+ *   bin/illi --train=target/illi.jsa &lt;corpus&gt;
+ *   java -cp target/test-classes com.benrkia.illi.StartupBenchmark target/illi-0.0.1.jar target/illi.jsa
+ * </pre>
+ */
+class StartupBenchmark {
+  private static final int WARMUP = 3;
+  private static final int ROUNDS = 20;
+
+  public static void main (String[] args) throws IOException, InterruptedException {
+    if (args.length != 2) {
+      System.out.println("Usage: StartupBenchmark <illi jar> <class data sharing archive>");
+      System.exit(64);
+    }
+    var jar = args[0];
+    var archive = args[1];
+
+    var hello = Files.createTempFile("hello", ".ily");
+    try {
+      Files.writeString(hello, "print \"hello\";\n");
+
+      System.out.printf("%-12s %10s %10s %10s%n", "archive", "min ms", "median ms", "max ms");
+      report("none", measure(command(jar, null, hello)));
+      report(archive, measure(command(jar, archive, hello)));
+    } finally {
+      Files.delete(hello);
+    }
+  }
+
+  private static List<String> command (String jar, String archive, Path script) {
+    var command = new ArrayList<String>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    if (archive != null) {
+      command.add("-XX:SharedArchiveFile=" + archive);
+      // fail rather than silently measure a run without the archive
+      command.add("-Xshare:on");
+    }
+    command.add("-cp");
+    command.add(jar);
+    command.add("com.benrkia.illi.Illi");
+    command.add(script.toString());
+    return command;
+  }
+
+  /**
+   * @return the milliseconds to the first line printed by each round
+   */
+  private static double[] measure (List<String> command) throws IOException, InterruptedException {
+    var millis = new double[ROUNDS];
+    for (var round = -WARMUP; round < ROUNDS; ++round) {
+      var start = System.nanoTime();
+      var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      try (var out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        var line = out.readLine();
+        var elapsed = System.nanoTime() - start;
+        if (!"hello".equals(line)) throw new IllegalStateException("Unexpected output: " + line);
+        if (round >= 0) millis[round] = elapsed / 1e6;
+      }
+      process.waitFor();
+    }
+    return millis;
+  }
+
+  private static void report (String name, double[] millis) {
+    Arrays.sort(millis);
+    System.out.printf("%-12s %10.1f %10.1f %10.1f%n",
+            Paths.get(name).getFileName(), millis[0], millis[millis.length / 2], millis[millis.length - 1]);
+  }
+}
@@ -0,0 +1,168 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks where {@link SubexpressionEliminator} puts its {@link Expr.Let}s and
+ * {@link Expr.Slot}s, and that programs print the same, errors included, with
+ * and without it.
+ */
+class SubexpressionEliminatorTest {
+  private static final int PROGRAMS = 2_000;
+  private static final String[] NAMES = {"a", "b", "c"};
+  private static final String DECLARATIONS = "var a = 1, b = 2, c = 3, s = \"s\";\n";
+
+  @Test
+  void evaluatesRepeatedSubexpressionsOnce () throws IllegalAccessException {
+    var statements = eliminate("print (a * b + c) > 0 ? (a * b + c) : -(a * b + c);");
+    assertEquals(1, count(statements, Expr.Let.class));
+    assertEquals(2, count(statements, Expr.Slot.class));
+    assertSame("print (a * b + c) > 0 ? (a * b + c) : -(a * b + c);");
+  }
+
+  @Test
+  void neverReusesAssignments () throws IllegalAccessException {
+    var source = "print (a = a + 1) + (a = a + 1);";
+    assertEquals(0, count(eliminate(source), Expr.Let.class));
+    assertSame(source);
+  }
+
+  @Test
+  void readsVariablesAgainAfterAnAssignment () throws IllegalAccessException {
+    var source = "print a * b + (b = 5, a * b);";
+    assertEquals(0, count(eliminate(source), Expr.Let.class));
+    assertSame(source);
+  }
+
+  @Test
+  void readsVariablesAgainAfterAnAssignmentInABranch () throws IllegalAccessException {
+    var source = "print a * b + (c > 2 ? (a = 10) : 0) + a * b;";
+    assertEquals(0, count(eliminate(source), Expr.Let.class));
+    assertSame(source);
+  }
+
+  @Test
+  void doesNotReuseBranchesAfterTheirConditional () throws IllegalAccessException {
+    // the branch isn't taken, the second a * b has to be evaluated
+    var source = "print (c > 5 ? a * b : 0) + a * b;";
+    assertEquals(0, count(eliminate(source), Expr.Let.class));
+    assertSame(source);
+  }
+
+  @Test
+  void reusesWithinABranch () throws IllegalAccessException {
+    var source = "print c > 0 ? a * b + a * b : 0;";
+    assertEquals(1, count(eliminate(source), Expr.Let.class));
+    assertSame(source);
+  }
+
+  @Test
+  void reusesBeforeTheConditionalInItsBranches () throws IllegalAccessException {
+    var source = "print a * b + (c > 0 ? a * b : -(a * b));";
+    assertEquals(1, count(eliminate(source), Expr.Let.class));
+    assertEquals(2, count(eliminate(source), Expr.Slot.class));
+    assertSame(source);
+  }
+
+  @Test
+  void keepsErrorsOfBranchesNotTaken () {
+    // the failing subexpression of the untaken branch must not be read back as a value
+    assertSame("print (false ? -s : 1) + -s;");
+    assertSame("print (true ? 1 : -s * 2) + (-s * 2);");
+  }
+
+  @Test
+  void reusesSlotsAcrossStatements () throws IllegalAccessException {
+    var source = "var x = a * b + a * b;\na = 10;\nprint a * b + a * b;\nprint x;";
+    var statements = eliminate(source);
+    assertEquals(List.of(0, 0), slots(statements));
+    assertSame(source);
+  }
+
+  @Test
+  void printsTheSameAsParsed () {
+    var random = new Random(42);
+    for (var i = 0; i < PROGRAMS; ++i) {
+      var source = new StringBuilder();
+      for (var j = 0; j < 4; ++j) {
+        var expr = expr(random, 4);
+        source.append("print ").append(expr).append(" + ").append(expr).append(" * ").append(expr).append(";\n");
+        if (random.nextBoolean()) {
+          source.append("{ var a = ").append(expr(random, 3)).append("; print ").append(expr(random, 3)).append("; }\n");
+        }
+      }
+      assertSame(source.toString());
+    }
+  }
+
+  private static void assertSame (String source) {
+    assertEquals(Scripts.run(DECLARATIONS + source),
+            Scripts.run(DECLARATIONS + source, new SubexpressionEliminator()::eliminate), source);
+  }
+
+  private static List<Stmt> eliminate (String source) {
+    return new SubexpressionEliminator().eliminate(Scripts.parse(source));
+  }
+
+  /**
+   * @return the nodes of type {@code type} in {@code node}
+   */
+  private static int count (Object node, Class<?> type) throws IllegalAccessException {
+    var count = type.isInstance(node) ? 1 : 0;
+    if (node instanceof List) {
+      for (var element: (List<?>) node) count += count(element, type);
+    } else if (node instanceof Stmt || node instanceof Expr) {
+      for (var field: node.getClass().getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) continue;
+        field.setAccessible(true);
+        count += count(field.get(node), type);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the slots of the lets of each statement
+   */
+  private static List<Integer> slots (List<Stmt> statements) {
+    var slots = new ArrayList<Integer>();
+    for (var stmt: statements) {
+      var expr = stmt instanceof Stmt.Print ? ((Stmt.Print) stmt).expr
+              : stmt instanceof Stmt.Vars ? ((Stmt.Var) ((Stmt.Vars) stmt).variables.get(0)).initializer
+              : null;
+      if (expr instanceof Expr.Binary && ((Expr.Binary) expr).left instanceof Expr.Let) {
+        slots.add(((Expr.Let) ((Expr.Binary) expr).left).slot);
+      }
+    }
+    return slots;
+  }
+
+  private static String expr (Random random, int depth) {
+    if (depth == 0 || random.nextInt(5) == 0) {
+      switch (random.nextInt(4)) {
+        case 0: return String.valueOf(random.nextInt(3));
+        case 1: return random.nextBoolean() ? "\"s\"" : name(random);
+        default: return name(random);
+      }
+    }
+
+    switch (random.nextInt(9)) {
+      case 0: return "(" + name(random) + " = " + expr(random, depth - 1) + ")";
+      case 1: return "(" + expr(random, depth - 1) + " ? " + expr(random, depth - 1) + " : " + expr(random, depth - 1) + ")";
+      case 2: return "-" + expr(random, depth - 1);
+      case 3: return "(" + expr(random, depth - 1) + ", " + expr(random, depth - 1) + ")";
+      default: return "(" + expr(random, depth - 1) + " " + "+-*/<>".charAt(random.nextInt(6)) + " " + expr(random, depth - 1) + ")";
+    }
+  }
+
+  private static String name (Random random) {
+    return NAMES[random.nextInt(NAMES.length)];
+  }
+}
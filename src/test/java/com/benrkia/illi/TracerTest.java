@@ -0,0 +1,69 @@
+package com.benrkia.illi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TracerTest {
+  private static final PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+
+  @Test
+  void dumpsTheLastEntriesOnARuntimeError () {
+    var bytes = new ByteArrayOutputStream();
+    var err = new PrintStream(bytes, true, StandardCharsets.UTF_8);
+    var interpreter = new InterpreterImpl(discard, new Reporter(discard));
+    interpreter.instrument(new Tracer(4, err));
+    interpreter.interpret(Scripts.parse("var a = 1;\nprint \"a\";\nprint a + 2;\nprint -\"b\";\n"));
+
+    assertEquals("Last 4 of 12 traced nodes:\n"
+            + "  [line 3] Binary = 3\n"
+            + "  [line 4] Print\n"
+            + "  [line 4] Literal = \"b\"\n"
+            + "  [line 4] Unary failed\n", bytes.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void dumpsWhileTheInterpreterRuns () throws InterruptedException {
+    var source = new StringBuilder("var a = 0;\n");
+    for (var i = 0; i < 20_000; ++i) source.append("a = a + 1;\nprint a > 10 ? \"x\" + a : nil;\n");
+    var statements = Scripts.parse(source.toString());
+
+    var tracer = new Tracer(64, discard);
+    var running = new AtomicBoolean(true);
+    var failure = new Throwable[1];
+    var dumps = new Thread(() -> {
+      try {
+        while (running.get()) {
+          var bytes = new ByteArrayOutputStream();
+          tracer.dump(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+          // a literal whose statement left the ring has no line left, 0 is printed
+          bytes.toString(StandardCharsets.UTF_8).lines().skip(1).forEach(line ->
+                  // statements are traced without a value, expressions with theirs: none is torn
+                  assertTrue(line.matches("  \\[line [0-9]+] ((Print|Expression|Var|Vars)|[A-Za-z]+( = .*| failed))"), line));
+        }
+      } catch (Throwable e) {
+        failure[0] = e;
+      }
+    });
+    dumps.start();
+
+    var reporter = new Reporter(System.err);
+    var interpreter = new InterpreterImpl(discard, reporter);
+    interpreter.instrument(tracer);
+    for (var run = 0; run < 5; ++run) {
+      interpreter.interpret(statements.subList(run == 0 ? 0 : 1, statements.size()));
+    }
+    running.set(false);
+    dumps.join();
+
+    assertEquals(0, reporter.status());
+    if (failure[0] != null) throw new AssertionError(failure[0]);
+  }
+}
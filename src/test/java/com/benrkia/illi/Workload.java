@@ -0,0 +1,67 @@
+package com.benrkia.illi;
+
+/**
+ * Generates {@code .ily} programs of a given size along each dimension, e.g.
+ * <pre>
+ *   java -cp target/classes:target/test-classes com.benrkia.illi.Workload \
+ *       --variables=1000 --depth=64 --expression=500 --concat=200 --prints=100 &gt; workload.ily
+ * </pre>
+ */
+class Workload {
+  /** global declarations */
+  int variables = 1;
+  /** nested blocks, each declaring a variable initialized from a global */
+  int depth = 0;
+  /** operands of a single arithmetic expression */
+  int expressionLength = 0;
+  /** assignments appending to the same string */
+  int concatLength = 0;
+  /** print statements */
+  int prints = 0;
+
+  String generate () {
+    var source = new StringBuilder();
+    for (var i = 0; i < variables; ++i) {
+      source.append("var v").append(i).append(" = ").append(i).append(";\n");
+    }
+
+    // every level reads v0, walking up the environments of all the levels above
+    for (var level = 0; level < depth; ++level) {
+      source.append("{ var d").append(level).append(" = v0 + ").append(level).append(";\n");
+    }
+    for (var level = 0; level < depth; ++level) source.append("}");
+    if (depth > 0) source.append("\n");
+
+    if (expressionLength > 0) {
+      source.append("var e = v0");
+      for (var i = 1; i < expressionLength; ++i) {
+        source.append(i % 2 == 0 ? " + " : " * ").append(i % variables == 0 ? "1" : "v" + i % variables);
+      }
+      source.append(";\n");
+    }
+
+    if (concatLength > 0) {
+      source.append("var s = \"\";\n");
+      for (var i = 0; i < concatLength; ++i) source.append("s = s + \"item \";\n");
+    }
+
+    for (var i = 0; i < prints; ++i) {
+      source.append("print v").append(i % variables).append(";\n");
+    }
+    return source.toString();
+  }
+
+  public static void main (String[] args) {
+    var workload = new Workload();
+    for (var arg: args) {
+      var value = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+      if (arg.startsWith("--variables=")) workload.variables = Math.max(value, 1);
+      else if (arg.startsWith("--depth=")) workload.depth = value;
+      else if (arg.startsWith("--expression=")) workload.expressionLength = value;
+      else if (arg.startsWith("--concat=")) workload.concatLength = value;
+      else if (arg.startsWith("--prints=")) workload.prints = value;
+      else throw new IllegalArgumentException("Unknown option " + arg);
+    }
+    System.out.print(workload.generate());
+  }
+}